@@ -0,0 +1,122 @@
+package bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// throughput ของ Assembler ทีละขั้นบนโปรแกรมสังเคราะห์ (Programs) ขนาด words word
+// ทุก benchmark ทำงานกับทั้งโปรแกรมหนึ่งครั้งต่อ op (เวลาต่อ op หารด้วย words = เวลาต่อบรรทัด)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssemblerBenchmark {
+    @Param({"straight", "loops"})
+    public String shape;
+
+    @Param({"50000"})
+    public int words;
+
+    private String source;
+    private Path input;
+    private Path output;
+    private List<String> lines;
+    private List<String> tokens; // ทุก operand ของทุกบรรทัด (ใช้กับ isNumeric)
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Throwable {
+        source = Programs.generate(shape, words);
+        input = Programs.write(source);
+        output = Files.createTempFile("bench", ".mc");
+        lines = (List<String>) (Object) Handles.READ_ASSEMBLY_FILE.invokeExact((Object) input.toString());
+        tokens = new ArrayList<>();
+        for (String line : lines) {
+            String[] parts = (String[]) (Object) Handles.TOKENIZE.invokeExact((Object) line);
+            for (int i = 1; i < parts.length; i++) {
+                tokens.add(parts[i]);
+            }
+        }
+        Handles.FIRST.invokeExact((Object) lines); // symbol table สำหรับ encode/second
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+    }
+
+    // อ่านไฟล์ ตัด comment และช่องว่าง
+    @Benchmark
+    public Object readAssemblyFile() throws Throwable {
+        return (Object) Handles.READ_ASSEMBLY_FILE.invokeExact((Object) input.toString());
+    }
+
+    // แยกทุกบรรทัดเป็น token แบบเดียวกับที่ first/second ทำ
+    @Benchmark
+    public void tokenize(Blackhole blackhole) throws Throwable {
+        for (String line : lines) {
+            blackhole.consume((Object) Handles.TOKENIZE.invokeExact((Object) line));
+        }
+    }
+
+    // ตรวจทุก operand ว่าเป็นตัวเลขหรือ label
+    @Benchmark
+    public int isNumeric() throws Throwable {
+        int numbers = 0;
+        for (String token : tokens) {
+            if ((boolean) Handles.IS_NUMERIC.invokeExact((Object) token)) {
+                numbers++;
+            }
+        }
+        return numbers;
+    }
+
+    // pass แรก: สร้าง symbol table
+    @Benchmark
+    public void first() throws Throwable {
+        Handles.FIRST.invokeExact((Object) lines);
+    }
+
+    // pass สองโดยไม่เขียนไฟล์: แปลงทุกบรรทัดเป็น machine code
+    @Benchmark
+    public Object encode() throws Throwable {
+        return (Object) Handles.ENCODE.invokeExact((Object) lines);
+    }
+
+    // pass สองเต็มๆ รวมการเขียน machine_code แบบข้อความ
+    @Benchmark
+    public void second() throws Throwable {
+        Handles.SECOND.invokeExact((Object) lines, (Object) output.toString());
+    }
+
+    // ทั้งสอง pass ตั้งแต่อ่านไฟล์ (Assembler.assemble)
+    @Benchmark
+    public Object assemble() throws Throwable {
+        return (Object) Handles.ASSEMBLE.invokeExact((Object) input.toString());
+    }
+
+    // StreamingAssembler ทำงานเดียวกันแบบ pass เดียว (เทียบกับ assemble)
+    @Benchmark
+    public Object streaming() throws Throwable {
+        return (Object) Handles.STREAMING_ASSEMBLE.invokeExact((Object) source);
+    }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+// คลาสของ simulator อยู่ใน default package ซึ่ง import จาก package อื่นไม่ได้ (และ JMH ไม่ยอมให้ benchmark อยู่ใน
+// default package) จึงเรียกผ่าน MethodHandle ที่ชนิดของคลาสใน simulator ถูกลบเป็น Object
+// handle เป็น static final ทั้งหมด JIT จึง inline การเรียกได้เหมือนเรียกตรงๆ
+final class Handles {
+    // Assembler
+    static final MethodHandle READ_ASSEMBLY_FILE = method("Assembler", "readAssemblyFile", String.class);
+    static final MethodHandle FIRST = method("Assembler", "first", java.util.List.class);
+    static final MethodHandle ENCODE = method("Assembler", "encode", java.util.List.class);
+    static final MethodHandle SECOND = method("Assembler", "second", java.util.List.class, String.class);
+    static final MethodHandle TOKENIZE = method("Assembler", "tokenize", String.class);
+    static final MethodHandle IS_NUMERIC = method("Assembler", "isNumeric", String.class);
+    static final MethodHandle ASSEMBLE = method("Assembler", "assemble", String.class);
+
+    // StreamingAssembler / MachineImage
+    static final MethodHandle STREAMING_ASSEMBLE = method("StreamingAssembler", "assemble", CharSequence.class);
+    static final MethodHandle IMAGE_WORDS = getter("MachineImage", "words");
+
+    // BehavioralSimulator
+    static final MethodHandle NEW_STATE = method("BehavioralSimulator", "newState", int[].class);
+    static final MethodHandle COPY_STATE = method("BehavioralSimulator$stateStruct", "copy");
+    static final MethodHandle NEW_DECODED = constructor("BehavioralSimulator$decodedStruct",
+            type("BehavioralSimulator$stateStruct"));
+    static final MethodHandle EXECUTE = method("BehavioralSimulator", "execute",
+            type("BehavioralSimulator$stateStruct"), type("BehavioralSimulator$decodedStruct"), int.class);
+    static final MethodHandle STEP = method("BehavioralSimulator", "step",
+            type("BehavioralSimulator$stateStruct"), type("BehavioralSimulator$decodedStruct"));
+    static final MethodHandle JIT_EXECUTE = method("BlockCompiler", "execute",
+            type("BehavioralSimulator$stateStruct"), type("BehavioralSimulator$decodedStruct"), int.class);
+
+    private Handles() {
+    }
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("simulator class not on classpath: " + name, e);
+        }
+    }
+
+    private static MethodHandle method(String className, String name, Class<?>... parameters) {
+        try {
+            Method method = type(className).getDeclaredMethod(name, parameters);
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            return handle.asType(handle.type().erase());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("can't find " + className + "." + name, e);
+        }
+    }
+
+    private static MethodHandle constructor(String className, Class<?>... parameters) {
+        try {
+            var constructor = type(className).getDeclaredConstructor(parameters);
+            constructor.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor);
+            return handle.asType(handle.type().erase());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("can't find constructor of " + className, e);
+        }
+    }
+
+    private static MethodHandle getter(String className, String name) {
+        try {
+            Field field = type(className).getDeclaredField(name);
+            field.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflectGetter(field);
+            return handle.asType(handle.type().erase());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("can't find " + className + "." + name, e);
+        }
+    }
+}
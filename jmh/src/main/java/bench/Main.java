@@ -0,0 +1,32 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// main ของ benchmarks.jar: รับ option ทุกตัวของ JMH (เช่น java -jar benchmarks.jar SimulatorBenchmark -p program=div)
+// แต่ถ้าไม่ระบุเองจะเปิด -prof gc (gc.alloc.rate) และเขียนผลเป็น JSON ที่ jmh-result.json เพื่อเอาไปเทียบกับรอบอื่น
+public class Main {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                || options.shouldListProfilers() || options.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        if (!options.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!options.getResult().hasValue()) {
+            builder.result("jmh-result.json");
+        }
+        if (options.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        new Runner(builder.build()).run();
+    }
+}
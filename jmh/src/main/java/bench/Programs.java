@@ -0,0 +1,86 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// โปรแกรม assembly สังเคราะห์ขนาดใหญ่สำหรับ benchmark
+//   straight - คำสั่งเรียงกันยาวไม่มี branch (ยกเว้นกระโดดข้าม data ตอนต้น) วัด assembler และการถอดรหัสโปรแกรมใหญ่
+//   loops    - loop นับถอยหลังหลายตัวต่อกัน แต่ละตัวมี body สั้นๆ วัด simulator ที่ใช้เวลาส่วนใหญ่ใน loop
+// ขนาดนับเป็นจำนวน word ของ image (ต้องไม่เกิน 65536 ตามขนาด memory ของ simulator)
+final class Programs {
+    static final int LOOP_ITERATIONS = 100;
+
+    private Programs() {
+    }
+
+    static String generate(String shape, int words) {
+        switch (shape) {
+            case "straight":
+                return straightLine(words);
+            case "loops":
+                return loopHeavy(words);
+            default:
+                throw new IllegalArgumentException("unknown program shape: " + shape);
+        }
+    }
+
+    // data อยู่ต้นโปรแกรมเพื่อให้ offset ของ lw/sw ที่อ้าง label อยู่ในช่วง 16 bit เสมอ
+    static String straightLine(int words) {
+        StringBuilder source = new StringBuilder(words * 24);
+        source.append("        beq 0 0 start\n");
+        source.append("one     .fill 1\n");
+        source.append("two     .fill 2\n");
+        source.append("scratch .fill 0\n");
+        source.append("start   lw 0 1 one\n");
+        source.append("        lw 0 2 two\n");
+        for (int i = 6, n = 0; i < words - 1; i++, n++) {
+            switch (n % 4) {
+                case 0:
+                    source.append("        add 1 2 3\n");
+                    break;
+                case 1:
+                    source.append("        nand 3 1 4    # comment\n");
+                    break;
+                case 2:
+                    source.append("        sw 0 4 scratch\n");
+                    break;
+                default:
+                    source.append("s").append(n).append("      lw 0 5 scratch\n");
+                    break;
+            }
+        }
+        source.append("        halt\n");
+        return source.toString();
+    }
+
+    // loop ละ 8 word: ตั้งตัวนับ, body 3 คำสั่ง, ลดตัวนับ, beq ออก, beq กลับ (ทำงาน LOOP_ITERATIONS รอบต่อ loop)
+    static String loopHeavy(int words) {
+        int loops = Math.max(1, (words - 4) / 8);
+        StringBuilder source = new StringBuilder(words * 24);
+        source.append("        beq 0 0 start\n");
+        source.append("count   .fill ").append(LOOP_ITERATIONS).append('\n');
+        source.append("neg     .fill -1\n");
+        source.append("start   lw 0 7 neg\n");
+        for (int i = 0; i < loops; i++) {
+            source.append("        lw 0 1 count\n");
+            source.append("l").append(i).append("      add 2 1 2\n");
+            source.append("        nand 2 1 3\n");
+            source.append("        add 3 2 4\n");
+            source.append("        add 1 7 1\n");
+            source.append("        beq 1 0 x").append(i).append('\n');
+            source.append("        beq 0 0 l").append(i).append('\n');
+            source.append("x").append(i).append("      noop\n");
+        }
+        source.append("        halt\n");
+        return source.toString();
+    }
+
+    // เขียน source ลงไฟล์ชั่วคราว (Assembler อ่านจากไฟล์เท่านั้น)
+    static Path write(String source) throws IOException {
+        Path file = Files.createTempFile("bench", ".asm");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, source);
+        return file;
+    }
+}
@@ -0,0 +1,116 @@
+package bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// instructions/sec ของ simulator บนโปรแกรมตัวอย่างใน src/ (input ใหญ่แบบเดียวกับ java Benchmark) และโปรแกรมสังเคราะห์
+// ดูตัวเลขที่ counter "instructions" (ops/s ของ invocation ไม่มีความหมายเพราะแต่ละรอบยาวไม่เท่ากัน)
+//   execute - BehavioralSimulator.execute ลูปหลักที่ใช้ decodedStruct
+//   jit     - BlockCompiler (รวมเวลา compile block ในแต่ละรอบ)
+//   step    - BehavioralSimulator.step ทีละคำสั่ง (ลูปของ trace/pipeline/cache/profiler) ดู gc.alloc.rate ของลูปนี้ด้วย -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatorBenchmark {
+    private static final int MAX_STEPS = Integer.MAX_VALUE - 1;
+
+    @Param({"fibonacci", "combination", "multiplication", "div", "straight", "loops"})
+    public String program;
+
+    // ขนาดของโปรแกรมสังเคราะห์ (ไม่ใช้กับโปรแกรมตัวอย่าง)
+    @Param({"50000"})
+    public int words;
+
+    private Object initial; // BehavioralSimulator.stateStruct ที่โหลด image แล้ว
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            instructions = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws Throwable {
+        int[] image;
+        if (program.equals("straight") || program.equals("loops")) {
+            Path file = Programs.write(Programs.generate(program, words));
+            image = (int[]) (Object) Handles.ASSEMBLE.invokeExact((Object) file.toString());
+            Files.delete(file);
+        } else {
+            image = (int[]) (Object) Handles.ASSEMBLE.invokeExact((Object) source(program));
+            // ค่า input ใหญ่ขึ้นเพื่อให้ลูปหลักทำงานนานพอ (ตำแหน่งนับจากท้าย image เหมือน Benchmark.INPUTS)
+            switch (program) {
+                case "fibonacci":
+                case "multiplication":
+                    image[image.length - 3] = 1_000_000;
+                    break;
+                case "div":
+                    image[image.length - 3] = 50_000_000;
+                    break;
+                default:
+                    break;
+            }
+        }
+        initial = (Object) Handles.NEW_STATE.invokeExact((Object) image);
+    }
+
+    // src/<program>.txt จากโฟลเดอร์ที่ระบุด้วย -Dbench.src= หรือ src/ ของ root (รันจาก root หรือจาก jmh/)
+    private static String source(String program) {
+        String dir = System.getProperty("bench.src");
+        if (dir == null) {
+            dir = Files.isDirectory(Path.of("src")) && Files.exists(Path.of("src", program + ".txt")) ? "src" : "../src";
+        }
+        return Path.of(dir, program + ".txt").toString();
+    }
+
+    @Benchmark
+    public Object execute(Counters counters) throws Throwable {
+        Object state = (Object) Handles.COPY_STATE.invokeExact(initial);
+        Object decoded = (Object) Handles.NEW_DECODED.invokeExact(state);
+        counters.instructions += (int) Handles.EXECUTE.invokeExact(state, decoded, MAX_STEPS);
+        return state;
+    }
+
+    @Benchmark
+    public Object jit(Counters counters) throws Throwable {
+        Object state = (Object) Handles.COPY_STATE.invokeExact(initial);
+        Object decoded = (Object) Handles.NEW_DECODED.invokeExact(state);
+        counters.instructions += (int) Handles.JIT_EXECUTE.invokeExact(state, decoded, MAX_STEPS);
+        return state;
+    }
+
+    @Benchmark
+    public Object step(Counters counters) throws Throwable {
+        Object state = (Object) Handles.COPY_STATE.invokeExact(initial);
+        Object decoded = (Object) Handles.NEW_DECODED.invokeExact(state);
+        long executed = 1;
+        while ((boolean) Handles.STEP.invokeExact(state, decoded) && executed <= MAX_STEPS) {
+            executed++;
+        }
+        counters.instructions += executed;
+        return state;
+    }
+}
@@ -0,0 +1,200 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// รันโปรแกรมเดียวกันกับ input หลายชุดพร้อมกันบนทุก core ใน JVM เดียว
+// รัน: java BatchRunner [--asm] <program> <manifest> [--threads=N] [--max-steps=N]
+//   <program>  ไฟล์ machine code แบบข้อความหรือ binary (หรือไฟล์ assembly ถ้าใส่ --asm)
+//              ใช้ชื่อ label ใน manifest ได้เมื่อเป็น assembly หรือ binary ที่มี symbol table
+//   <manifest> บรรทัดละหนึ่งการรัน: <ชื่อ> <address|label>=<ค่า> ... เช่น "n5r2 five=5 two=2" (# คือ comment)
+// ทุกการรันใช้ผลถอดรหัสโปรแกรม (decodedStruct) ชุดเดียวกันแบบอ่านอย่างเดียว แต่ละการรันมี stateStruct ของตัวเอง
+// ซึ่ง copy มาจาก state ต้นแบบแบบ copy-on-write (แชร์ page ของ memory จนกว่าจะมีการเขียน)
+public class BatchRunner {
+    private static final int DEFAULT_MAX_STEPS = 10_000_000;
+
+    // input หนึ่งชุด: ชื่อ และ memory ที่ต้องแก้ก่อนรัน
+    static class Job {
+        final String name;
+        final int[] addresses;
+        final int[] values;
+
+        Job(String name, int[] addresses, int[] values) {
+            this.name = name;
+            this.addresses = addresses;
+            this.values = values;
+        }
+    }
+
+    // ผลของการรันหนึ่งครั้ง
+    static class Result {
+        String name;
+        long steps;
+        int pc;
+        int[] reg;
+        String status; // halted, limit หรือข้อความ error
+    }
+
+    public static void main(String[] args) {
+        boolean assembly = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxSteps = DEFAULT_MAX_STEPS;
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--asm")) {
+                assembly = true;
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--max-steps=")) {
+                maxSteps = Math.min(Long.parseLong(arg.substring("--max-steps=".length())), Long.MAX_VALUE - 1);
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.size() != 2) {
+            System.err.println("usage: java BatchRunner [--asm] <program> <manifest> [--threads=N] [--max-steps=N]");
+            System.exit(1);
+        }
+
+        int[] image;
+        Map<String, Integer> symbols = new HashMap<>();
+        List<Job> jobs;
+        try {
+            if (assembly) {
+                MachineImage machineImage = StreamingAssembler.assembleFile(files.get(0));
+                image = machineImage.words;
+                symbols = machineImage.symbols;
+            } else {
+                MachineImage machineImage = MachineImage.read(files.get(0));
+                image = machineImage.words;
+                symbols = machineImage.symbols; // image แบบ binary มีชื่อ label ติดมาด้วย
+            }
+            jobs = readManifest(files.get(1), symbols);
+        } catch (StreamingAssembler.AssemblyError e) {
+            System.err.println("error: " + files.get(0) + ":" + e.line() + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<Result> results = run(image, jobs, threads, maxSteps);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        print(System.out, results, seconds);
+    }
+
+    // อ่าน manifest: แต่ละบรรทัดคือชื่อการรันตามด้วย <address|label>=<ค่า>
+    static List<Job> readManifest(String fileName, Map<String, Integer> symbols) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int commentIndex = line.indexOf('#');
+                if (commentIndex != -1) {
+                    line = line.substring(0, commentIndex);
+                }
+                line = line.trim();
+                if (line.isEmpty()) continue;
+
+                String[] parts = line.split("\\s+");
+                int[] addresses = new int[parts.length - 1];
+                int[] values = new int[parts.length - 1];
+                for (int i = 1; i < parts.length; i++) {
+                    int eq = parts[i].indexOf('=');
+                    if (eq <= 0) {
+                        throw new IllegalArgumentException(fileName + ":" + lineNumber + ": expected <address|label>=<value>: " + parts[i]);
+                    }
+                    String target = parts[i].substring(0, eq);
+                    if (symbols.containsKey(target)) {
+                        addresses[i - 1] = symbols.get(target);
+                    } else if (target.matches("\\d+")) {
+                        addresses[i - 1] = Integer.parseInt(target);
+                    } else {
+                        throw new IllegalArgumentException(fileName + ":" + lineNumber + ": undefined label: " + target);
+                    }
+                    values[i - 1] = Integer.parseInt(parts[i].substring(eq + 1));
+                }
+                jobs.add(new Job(parts[0], addresses, values));
+            }
+        }
+        return jobs;
+    }
+
+    // รันทุก job บน ForkJoinPool ขนาด threads แล้วคืนผลตามลำดับใน manifest
+    static List<Result> run(int[] image, List<Job> jobs, int threads, long maxSteps) {
+        BehavioralSimulator.stateStruct initial = BehavioralSimulator.newState(image);
+        BehavioralSimulator.decodedStruct program = new BehavioralSimulator.decodedStruct(initial);
+        List<Callable<Result>> tasks = new ArrayList<>();
+        for (Job job : jobs) {
+            // copy ที่นี่ (thread เดียว) เพราะ copy() แก้สถานะการแชร์ page ของต้นแบบ
+            BehavioralSimulator.stateStruct state = initial.copy();
+            tasks.add(() -> runOne(state, program, job, maxSteps));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Result runOne(BehavioralSimulator.stateStruct state, BehavioralSimulator.decodedStruct program,
+                                 Job job, long maxSteps) {
+        BehavioralSimulator.decodedStruct decoded = new BehavioralSimulator.decodedStruct(program);
+        Result result = new Result();
+        result.name = job.name;
+        try {
+            for (int i = 0; i < job.addresses.length; i++) {
+                state.mem.set(job.addresses[i], job.values[i]);
+                if (job.addresses[i] < decoded.size) {
+                    decoded.decode(job.addresses[i], job.values[i]); // input ทับโค้ด (หรือ .fill ที่ถูก execute)
+                }
+            }
+            result.steps = BehavioralSimulator.run(state, decoded, 0, maxSteps, false, null);
+            result.status = result.steps > maxSteps ? "limit" : "halted";
+        } catch (PagedMemory.MemoryFault e) {
+            result.status = "error: " + e.getMessage();
+        } catch (IOException | RuntimeException e) {
+            result.status = "error: " + e;
+        }
+        result.pc = state.pc;
+        result.reg = state.reg.clone();
+        return result;
+    }
+
+    static void print(PrintStream out, List<Result> results, double seconds) {
+        StringBuilder sb = new StringBuilder();
+        long totalSteps = 0;
+        for (Result r : results) {
+            totalSteps += r.steps;
+            sb.append(r.name).append(' ').append(r.status)
+                    .append(" steps=").append(r.steps)
+                    .append(" pc=").append(r.pc)
+                    .append(" reg=").append(Arrays.toString(r.reg)).append('\n');
+        }
+        sb.append(String.format("%d runs, %d instructions in %.3f s: %.0f instructions/sec, %.0f runs/sec%n",
+                results.size(), totalSteps, seconds, totalSteps / seconds, results.size() / seconds));
+        out.print(sb);
+    }
+}
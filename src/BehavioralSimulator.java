@@ -1,157 +1,521 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class BehavioralSimulator {
     private static final int NUMMEMORY = 65536; // maximum number ของ words ใน memory
     private static final int NUMREGS = 8; // จำนวน machine registers
-    private static final int MAXLINELENGTH = 1000; // จำนวนคำสั่งสูงสุดที่สามารถทำงานได้
+    static final int MAXLINELENGTH = 1000; // จำนวนคำสั่งสูงสุดที่สามารถทำงานได้ (ค่าเริ่มต้น เปลี่ยนได้ด้วย --max-steps)
+    static final int CHUNK = 1 << 20; // จำนวนคำสั่งต่อช่วงของ run (ระหว่างช่วงเขียน checkpoint/เช็คเวลาได้)
 
     public static class stateStruct {
         int pc; // program counter
-        int[] mem = new int[NUMMEMORY];
+        PagedMemory mem = new PagedMemory(NUMMEMORY); // จองจริงทีละ page เมื่อถูกเขียน
         int[] reg = new int[NUMREGS];
         int numMemory; // นับจำนวน momory ที่ใช้อยู่
+        boolean halted; // ทำคำสั่ง halt ไปแล้ว (แยกกรณีหยุดเพราะ halt ออกจากหยุดเพราะครบจำนวนคำสั่ง)
+
+        // copy state ทั้งหมด โดย memory แชร์ page กันแบบ copy-on-write
+        public stateStruct copy() {
+            stateStruct copy = new stateStruct();
+            copy.pc = pc;
+            copy.mem = mem.copy();
+            copy.reg = reg.clone();
+            copy.numMemory = numMemory;
+            copy.halted = halted;
+            return copy;
+        }
     }
 
-    public static void printState(stateStruct state) {
-        System.out.println("\n@@@\nstate:");
-        System.out.println("\tpc " + state.pc);
-        System.out.println("\tmemory:");
-        for (int i = 0; i < state.numMemory; i++) {
-            System.out.println("\t\tmem[ " + i + " ] " + state.mem[i]);
+    public static int convert(int num) { //Converts เป็น signed number -32768 ถึง 32767
+        if ((num & (1 << 15)) != 0) {//ตรวจสอบว่า bit 15 เป็น 1
+            num -= (1 << 16); // ลบค่า 2^16 (65536) ออกจาก num เพื่อแปลงเป็น signed number
+        }
+        return num; //ส่งค่าที่แปลงแล้ว เพื่อคำนวณเลขลบ
+    }
+
+    // เก็บผลการถอดรหัสของทุก word ใน memory ไว้ล่วงหน้า เพื่อไม่ต้อง shift/mask ซ้ำทุกครั้งที่ลูปวนกลับมาที่คำสั่งเดิม
+    // แต่ละ word ใช้ 4 ช่องติดกันใน code[]: opcode, regA, regB และ destReg (R-Type) หรือ offset แบบ signed (I-Type)
+    // วางติดกันใน array เดียวเพื่อให้การ fetch หนึ่งคำสั่งอยู่ใน cache line เดียว
+    public static class decodedStruct {
+        static final int OPCODE = 0;
+        static final int REGA = 1;
+        static final int REGB = 2;
+        static final int OPERAND = 3; // destReg ของ add/nand หรือ offset ของ lw/sw/beq
+        static final int STRIDE = 4;
+
+        int[] code;
+        int size; // จำนวน word ที่ถอดรหัสไว้แล้ว (address 0 ถึง size-1)
+        private boolean shared; // code[] เป็นของ decodedStruct ตัวอื่น ต้อง copy ก่อนแก้ (copy-on-write)
+
+        decodedStruct(stateStruct state) {
+            size = state.numMemory;
+            code = new int[size * STRIDE];
+            for (int i = 0; i < size; i++) {
+                decode(i, state.mem.get(i));
+            }
+        }
+
+        // ใช้ผลถอดรหัสของ image ร่วมกันโดยไม่ copy (เช่น BatchRunner ที่หลายการรันใช้โปรแกรมเดียวกัน)
+        // ทั้งสองฝั่งถือว่า code[] แชร์กันอยู่: ฝั่งไหน sw ทับโค้ด (หรือ Machine.setMemory) จะ copy code[] มาเป็นของตัวเองก่อน
+        decodedStruct(decodedStruct image) {
+            code = image.code;
+            size = image.size;
+            shared = true;
+            image.shared = true; // ต้นฉบับที่ยังแก้ได้ (เช่น Machine ที่ถูก copy()) ห้ามเขียนทับ code[] ของ copy
+        }
+
+        // ถอดรหัส word เดียวแล้วเก็บลง cache ที่ตำแหน่ง addr
+        void decode(int addr, int bit) {
+            if (shared) {
+                code = code.clone();
+                shared = false;
+            }
+            int base = addr * STRIDE;
+            int opcode = bit >> 22; // ใช้ >> แบบเดียวกับลูปเดิม (ค่าที่ไม่ใช่ 0-7 จะไม่ทำอะไร)
+            code[base + OPCODE] = opcode;
+            code[base + REGA] = (bit & (7 << 19)) >> 19;
+            code[base + REGB] = (bit & (7 << 16)) >> 16;
+            code[base + OPERAND] = (opcode == 0 || opcode == 1) ? bit & 7 : convert(bit & 0xFFFF);
         }
-        System.out.println("\tregisters:");
-        for (int i = 0; i < NUMREGS; i++) {
-            System.out.println("\t\treg[ " + i + " ] " + state.reg[i]);
+
+        // pc วิ่งออกนอกส่วนที่ถอดรหัสไว้ (เช่น กระโดดไปหลัง .fill) ให้ขยาย cache แล้วถอดรหัสจาก memory จริง
+        void grow(stateStruct state, int pc) {
+            if (pc < 0 || pc >= NUMMEMORY) {
+                throw new PagedMemory.MemoryFault(pc, NUMMEMORY); // fetch นอก memory
+            }
+            int oldSize = size;
+            size = Math.min(NUMMEMORY, Math.max(pc + 1, oldSize * 2));
+            code = Arrays.copyOf(code, size * STRIDE);
+            shared = false;
+            for (int i = oldSize; i < size; i++) {
+                decode(i, state.mem.get(i));
+            }
         }
-        System.out.println("end state");
     }
 
-    private static void RType(int bit, int[] arg) {
-        arg[0] = (bit & (7 << 19)) >> 19; // regA (Bits 19-21)
-        arg[1] = (bit & (7 << 16)) >> 16; // regB (Bits 16-18)
-        arg[2] = bit & 7; // destReg (Bits 0-2)
+    // รันโปรแกรมจาก cache ที่ถอดรหัสไว้แล้ว คืนค่าจำนวนคำสั่งที่ทำงานไป
+    // หยุดเมื่อเจอ halt หรือทำงานเกิน maxSteps คำสั่ง (คืนค่า maxSteps + 1); ถ้าต้องการ trace ระหว่างทางใช้ TraceWriter.execute
+    public static int execute(stateStruct state, decodedStruct decoded, int maxSteps) {
+        int[] reg = state.reg;
+        PagedMemory mem = state.mem;
+        int[] code = decoded.code;
+        int pc = state.pc;
+        int total = 0;
+        boolean halted = false;
+
+        try {
+            while (!halted) {
+                total++;
+                if (pc < 0 || pc >= decoded.size) {
+                    decoded.grow(state, pc);
+                    code = decoded.code;
+                }
+                int base = pc * decodedStruct.STRIDE;
+                int regA = code[base + decodedStruct.REGA];
+                int regB = code[base + decodedStruct.REGB];
+                int operand = code[base + decodedStruct.OPERAND];
+
+                switch (code[base + decodedStruct.OPCODE]) {
+                    case 0: // add
+                        reg[operand] = reg[regA] + reg[regB];
+                        break;
+
+                    case 1: // nand
+                        reg[operand] = ~(reg[regA] & reg[regB]);
+                        break;
+
+                    case 2: // lw
+                        reg[regB] = mem.get(operand + reg[regA]);
+                        break;
+
+                    case 3: { // sw
+                        int address = operand + reg[regA];
+                        mem.set(address, reg[regB]);
+                        if (address < decoded.size) {
+                            decoded.decode(address, reg[regB]); // เขียนทับคำสั่งที่ถอดรหัสไว้ -> ถอดรหัสใหม่ (self-modifying code)
+                            code = decoded.code; // อาจเป็น array ใหม่ถ้าเพิ่ง copy-on-write
+                        }
+                        break;
+                    }
+
+                    case 4: // beq
+                        if (reg[regA] == reg[regB]) {
+                            pc += operand;
+                        }
+                        break;
+
+                    case 5: { // jalr
+                        int target = reg[regA];
+                        reg[regB] = pc + 1;
+                        pc = target - 1;
+                        break;
+                    }
+
+                    case 6: // halt
+                        halted = true;
+                        state.halted = true;
+                        break;
+
+                    default: // noop และ opcode ที่ไม่รู้จัก
+                        break;
+                }
+                pc++;
+
+                if (total > maxSteps) {
+                    halted = true; // หยุด execution program
+                }
+            }
+        } finally {
+            state.pc = pc; // ถ้าเกิด MemoryFault pc จะชี้ที่คำสั่งที่ผิด
+        }
+        return total;
     }
 
-    private static void IType(int bit, int[] arg) {
-        arg[0] = (bit & (7 << 19)) >> 19; // regA (Bits 19-21)
-        arg[1] = (bit & (7 << 16)) >> 16; // regB (Bits 16-18)
-        arg[2] = bit & 0xFFFF; // Offset (Bits 0-15)
-        arg[2] = convert(arg[2]); // Convert เป็น signed offset
+    // ทำงานคำสั่งเดียวที่ state.pc แล้วเลื่อน pc; คืนค่า false เมื่อคำสั่งนั้นคือ halt
+    // ใช้กับโหมดที่ต้องหยุดดูระหว่างคำสั่ง (ความหมายต้องตรงกับ switch ใน execute ทุกกรณี)
+    static boolean step(stateStruct state, decodedStruct decoded) {
+        int[] reg = state.reg;
+        int pc = state.pc;
+        if (pc < 0 || pc >= decoded.size) {
+            decoded.grow(state, pc);
+        }
+        int[] code = decoded.code;
+        int base = pc * decodedStruct.STRIDE;
+        int regA = code[base + decodedStruct.REGA];
+        int regB = code[base + decodedStruct.REGB];
+        int operand = code[base + decodedStruct.OPERAND];
+        boolean running = true;
+
+        switch (code[base + decodedStruct.OPCODE]) {
+            case 0: // add
+                reg[operand] = reg[regA] + reg[regB];
+                break;
+
+            case 1: // nand
+                reg[operand] = ~(reg[regA] & reg[regB]);
+                break;
+
+            case 2: // lw
+                reg[regB] = state.mem.get(operand + reg[regA]);
+                break;
+
+            case 3: { // sw
+                int address = operand + reg[regA];
+                state.mem.set(address, reg[regB]);
+                if (address < decoded.size) {
+                    decoded.decode(address, reg[regB]); // เขียนทับคำสั่งที่ถอดรหัสไว้ -> ถอดรหัสใหม่ (self-modifying code)
+                }
+                break;
+            }
+
+            case 4: // beq
+                if (reg[regA] == reg[regB]) {
+                    pc += operand;
+                }
+                break;
+
+            case 5: { // jalr
+                int target = reg[regA];
+                reg[regB] = pc + 1;
+                pc = target - 1;
+                break;
+            }
+
+            case 6: // halt
+                running = false;
+                state.halted = true;
+                break;
+
+            default: // noop และ opcode ที่ไม่รู้จัก
+                break;
+        }
+        state.pc = pc + 1;
+        return running;
     }
 
-    private static void JType(int bit, int[] arg) {
-        arg[0] = (bit & (7 << 19)) >> 19; // regA (Bits 19-21)
-        arg[1] = (bit & (7 << 16)) >> 16; // regB (Bits 16-18)
-        arg[2] = bit & 0xFFFF; // destReg เอา bit ที่ 0-15
+    // ถูกเรียกระหว่าง run ทุก CHUNK คำสั่ง (เช่นเขียน checkpoint หรือเช็ค timeout) คืน false เพื่อหยุดก่อนครบ budget
+    public interface Progress {
+        boolean proceed(stateStruct state, long total) throws IOException;
     }
 
-    private static void OType(int bit, int[] arg) {
-        arg[0] = bit & 0x3FFFFFF; // regA 22 bit แรก 0-21
+    // รันต่อจาก state จนเจอ halt หรือทำรวมเกิน maxSteps คำสั่ง (total นับต่อจาก done เช่นคำสั่งที่ทำไปก่อน resume)
+    // budget เป็น long จึงรันได้หลายพันล้านคำสั่ง โดยแบ่งทำทีละ CHUNK คำสั่งด้วย execute (หรือ BlockCompiler ถ้า jit)
+    // แล้วเรียก progress ระหว่างช่วง (null ได้)
+    public static long run(stateStruct state, decodedStruct decoded, long done, long maxSteps, boolean jit,
+                           Progress progress) throws IOException {
+        BlockCompiler compiler = jit ? new BlockCompiler(state, decoded) : null;
+        long total = done;
+        while (!state.halted && total <= maxSteps) {
+            int n = maxSteps - total < CHUNK ? (int) (maxSteps - total) + 1 : CHUNK;
+            total += jit ? compiler.run(n - 1) : execute(state, decoded, n - 1);
+            if (progress != null && !progress.proceed(state, total)) {
+                break;
+            }
+        }
+        return total;
     }
 
-    public static int convert(int num) { //Converts เป็น signed number -32768 ถึง 32767
-        if ((num & (1 << 15)) != 0) {//ตรวจสอบว่า bit 15 เป็น 1
-            num -= (1 << 16); // ลบค่า 2^16 (65536) ออกจาก num เพื่อแปลงเป็น signed number
+    // อ่านไฟล์ machine code ได้ทั้งแบบข้อความ (เลขฐานสิบบรรทัดละหนึ่ง word) และแบบ binary (MachineImage)
+    public static int[] readImage(String fileName) throws IOException {
+        return MachineImage.read(fileName).words;
+    }
+
+    // สร้าง state ใหม่ที่โหลด image ไว้ที่ address 0 และ pc เริ่มที่ 0
+    public static stateStruct newState(int[] image) {
+        stateStruct state = new stateStruct();
+        for (int i = 0; i < image.length; i++) {
+            state.mem.set(i, image[i]);
         }
-        return num; //ส่งค่าที่แปลงแล้ว เพื่อคำนวณเลขลบ
+        state.numMemory = image.length; // numMemory ใช้นับว่ามีคำสั่งทั้งหมดกี่คำสั่งที่ถูกเก็บอยู่ใน memory
+        state.pc = 0; // Program Counter เริ่มที่ 0
+        return state;
     }
 
     public static void main(String[] args) {
-        String fileName = "src/machine_code.txt"; // อ่าน machine_code.txt แล้ว store ใน memory array (mem[])
-        stateStruct state = new stateStruct();
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                state.mem[state.numMemory] = Integer.parseInt(line);
-                System.out.println("memory[" + state.numMemory + "]=" + state.mem[state.numMemory]);
-                state.numMemory++; // numMemory ใช้นับว่ามีคำสั่งทั้งหมดกี่คำสั่งที่ถูกเก็บอยู่ใน memory
+        boolean jit = false; // --jit: compile block ที่ร้อนเป็น bytecode (BlockCompiler)
+        int traceLevel = TraceWriter.FULL; // --trace=none|final|delta|full|binary (ค่าเริ่มต้นคือรูปแบบเดิม)
+        String traceFile = null; // --trace-file=<path> (ไม่ระบุ = stdout, binary = trace.bin)
+        String fileName = "src/machine_code.txt"; // --image=<path> ไฟล์ข้อความหรือ binary (แยกจาก header อัตโนมัติ)
+        long maxSteps = MAXLINELENGTH; // --max-steps=N (ค่าเริ่มต้นเท่าเดิมเพื่อให้ output ตรวจงานไม่เปลี่ยน)
+        String checkpointFile = null; // --checkpoint=<path> เขียน checkpoint ระหว่างรัน
+        long checkpointInterval = 1000; // --checkpoint-interval=<ms>
+        boolean resume = false; // --resume รันต่อจาก checkpoint ล่าสุดในไฟล์ --checkpoint แทนการโหลด image
+        boolean pipeline = false; // --pipeline จับเวลาบน pipeline 5 ขั้น (PipelineModel) แล้วพิมพ์ cycle/CPI/stall ต่อท้าย
+        boolean forwarding = true; // --forwarding=on|off
+        int branchPenalty = 2; // --branch-penalty=N cycle ที่เสียเมื่อ beq กระโดด
+        int jalrPenalty = 2; // --jalr-penalty=N
+        String icacheSpec = null; // --icache[=SPEC] cache ของการ fetch คำสั่ง (รูปแบบ SPEC ดู CacheModel.parse)
+        String dcacheSpec = null; // --dcache[=SPEC] cache ของ lw/sw
+        String l2Spec = null; // --l2[=SPEC] cache ระดับสองที่ icache และ dcache ใช้ร่วมกัน
+        int memoryLatency = 100; // --mem-latency=N cycle ของ memory หลัง cache ระดับสุดท้าย (ใช้คำนวณ AMAT)
+        int profileMode = -1; // --profile[=full|sample] พิมพ์ profile ราย pc/loop ต่อท้าย (Profiler)
+        int sampleInterval = 1000; // --sample-interval=N
+        boolean fastLoops = false; // --fast-loops ข้าม loop นับรอบที่มีแต่ add/beq ด้วยการคำนวณตรงๆ (LoopAccelerator)
+        String mapFile = null; // --map=<path> line map จาก java Assembler --map (ค่าเริ่มต้นคือไฟล์ .map คู่กับ image ถ้ามี)
+        for (String arg : args) {
+            if (arg.equals("--jit")) {
+                jit = true;
+            } else if (arg.startsWith("--trace=")) {
+                traceLevel = TraceWriter.parseLevel(arg.substring("--trace=".length()));
+            } else if (arg.startsWith("--trace-file=")) {
+                traceFile = arg.substring("--trace-file=".length());
+            } else if (arg.startsWith("--image=")) {
+                fileName = arg.substring("--image=".length());
+            } else if (arg.startsWith("--max-steps=")) {
+                maxSteps = Math.min(Long.parseLong(arg.substring("--max-steps=".length())), Long.MAX_VALUE - 1);
+            } else if (arg.startsWith("--checkpoint=")) {
+                checkpointFile = arg.substring("--checkpoint=".length());
+            } else if (arg.startsWith("--checkpoint-interval=")) {
+                checkpointInterval = Long.parseLong(arg.substring("--checkpoint-interval=".length()));
+            } else if (arg.equals("--resume")) {
+                resume = true;
+            } else if (arg.equals("--pipeline")) {
+                pipeline = true;
+            } else if (arg.equals("--forwarding=on") || arg.equals("--forwarding=off")) {
+                forwarding = arg.endsWith("on");
+            } else if (arg.startsWith("--branch-penalty=")) {
+                branchPenalty = Integer.parseInt(arg.substring("--branch-penalty=".length()));
+            } else if (arg.startsWith("--jalr-penalty=")) {
+                jalrPenalty = Integer.parseInt(arg.substring("--jalr-penalty=".length()));
+            } else if (arg.equals("--icache") || arg.startsWith("--icache=")) {
+                icacheSpec = arg.length() > "--icache".length() ? arg.substring("--icache=".length()) : "";
+            } else if (arg.equals("--dcache") || arg.startsWith("--dcache=")) {
+                dcacheSpec = arg.length() > "--dcache".length() ? arg.substring("--dcache=".length()) : "";
+            } else if (arg.equals("--l2") || arg.startsWith("--l2=")) {
+                l2Spec = arg.length() > "--l2".length() ? arg.substring("--l2=".length()) : "";
+            } else if (arg.startsWith("--mem-latency=")) {
+                memoryLatency = Integer.parseInt(arg.substring("--mem-latency=".length()));
+            } else if (arg.equals("--profile") || arg.equals("--profile=full")) {
+                profileMode = Profiler.FULL;
+            } else if (arg.equals("--profile=sample")) {
+                profileMode = Profiler.SAMPLE;
+            } else if (arg.startsWith("--sample-interval=")) {
+                sampleInterval = Integer.parseInt(arg.substring("--sample-interval=".length()));
+            } else if (arg.equals("--fast-loops")) {
+                fastLoops = true;
+            } else if (arg.startsWith("--map=")) {
+                mapFile = arg.substring("--map=".length());
+            } else {
+                System.err.println("error: unknown option " + arg);
+                System.exit(1);
             }
-        } catch (IOException e) {  //ดักจับ error จากการอ่านไฟล์
-            System.err.println("error: can't open file " + fileName);
-            e.printStackTrace();
+        }
+        if (traceLevel == TraceWriter.BINARY && traceFile == null) {
+            traceFile = "trace.bin";
+        }
+        if (checkpointFile != null && traceLevel != TraceWriter.NONE && traceLevel != TraceWriter.FINAL) {
+            System.err.println("error: --checkpoint needs --trace=none or --trace=final");
+            System.exit(1);
+        }
+        if (pipeline && (jit || checkpointFile != null || (traceLevel != TraceWriter.NONE && traceLevel != TraceWriter.FINAL))) {
+            System.err.println("error: --pipeline needs --trace=none or --trace=final and no --jit/--checkpoint");
+            System.exit(1);
+        }
+        boolean caches = icacheSpec != null || dcacheSpec != null;
+        if (caches && (pipeline || jit || checkpointFile != null
+                || (traceLevel != TraceWriter.NONE && traceLevel != TraceWriter.FINAL))) {
+            System.err.println("error: --icache/--dcache need --trace=none or --trace=final and no --pipeline/--jit/--checkpoint");
+            System.exit(1);
+        }
+        if (profileMode >= 0 && (pipeline || caches || jit || checkpointFile != null
+                || (traceLevel != TraceWriter.NONE && traceLevel != TraceWriter.FINAL))) {
+            System.err.println("error: --profile needs --trace=none or --trace=final and no --pipeline/--icache/--dcache/--jit/--checkpoint");
+            System.exit(1);
+        }
+        if (fastLoops && (pipeline || caches || profileMode >= 0 || jit || checkpointFile != null
+                || (traceLevel != TraceWriter.NONE && traceLevel != TraceWriter.FINAL))) {
+            System.err.println("error: --fast-loops needs --trace=none or --trace=final and no --pipeline/--icache/--dcache/--profile/--jit/--checkpoint");
+            System.exit(1);
+        }
+        if (l2Spec != null && !caches) {
+            System.err.println("error: --l2 needs --icache or --dcache");
+            System.exit(1);
+        }
+        CacheModel icache = null;
+        CacheModel dcache = null;
+        CacheModel l2 = null;
+        try {
+            icache = icacheSpec == null ? null : CacheModel.parse("icache", icacheSpec);
+            dcache = dcacheSpec == null ? null : CacheModel.parse("dcache", dcacheSpec);
+            l2 = l2Spec == null ? null : CacheModel.parse("l2", l2Spec);
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+        for (CacheModel cache : new CacheModel[]{icache, dcache, l2}) {
+            if (cache != null) {
+                cache.setMemoryLatency(memoryLatency);
+                if (cache != l2) {
+                    cache.setNext(l2);
+                }
+            }
+        }
+        if (resume && checkpointFile == null) {
+            System.err.println("error: --resume needs --checkpoint=<path>");
             System.exit(1);
         }
 
-        state.pc = 0; // Program Counter เริ่มที่ 0
-        int regA, regB;
-        int offset = 0; // ใช้สำหรับการคำนวณที่เกี่ยวข้องกับ lw, sw
-        int[] arg = new int[3];
-        int total = 0;
-
-
-        for (int i = 1; i != 0; i++) {
-            total++;
-            printState(state);
-
-            int instruction = state.mem[state.pc]; //คำสั่งดึงจาก mem[] ตามตำแหน่งที่ pc ชี้อยู่
-            int opcode = instruction >> 22; // แล้วแยกเอา opcode ออกจาก instruction บิตบนสุด
-
-            switch (opcode) {
-                case 0: // add
-                    RType(state.mem[state.pc], arg); // R-Type
-                    regA = state.reg[arg[0]];
-                    regB = state.reg[arg[1]];
-                    state.reg[arg[2]] = regA + regB; // บวกค่า regA และ regB แล้วเก็บลงใน register ที่ arg[2]
-                    break;
-
-                case 1: // nand
-                    RType(state.mem[state.pc], arg); // R-Type
-                    regA = state.reg[arg[0]];
-                    regB = state.reg[arg[1]];
-                    state.reg[arg[2]] = ~(regA & regB); // คำนวณ nand ระหว่าง regA และ regB เก็บไว้ที่ arg[2]
-                    break;
-
-                case 2: // lw
-                    IType(state.mem[state.pc], arg); // I-Type
-                    offset = arg[2] + state.reg[arg[0]];
-                    state.reg[arg[1]] = state.mem[offset]; // load ค่าจาก memory ที่คำนวณจาก offset ไป arg[1]
-                    break;
-
-                case 3: // sw
-                    IType(state.mem[state.pc], arg); // I-Type
-                    offset = arg[2] + state.reg[arg[0]];
-                    state.mem[offset] = state.reg[arg[1]]; // store ค่าจาก arg[1] ลงใน memory ที่ตำแหน่ง offset
-                    break;
-
-                case 4: // beq
-                    IType(state.mem[state.pc], arg); // I-Type
-                    regA = state.reg[arg[0]];
-                    regB = state.reg[arg[1]];
-                    if (regA == regB) {
-                        state.pc += arg[2]; // กระโดดไปยังตำแหน่งใหม่โดยบวก arg[2]
-                    }
-                    break;
+        stateStruct state = null; // อ่าน machine code แล้ว store ใน memory (mem[]) โดย pc เริ่มที่ entry point
+        Checkpoint checkpoint = null;
+        long done = 0; // จำนวนคำสั่งที่ทำไปแล้วก่อน resume
+        try {
+            if (resume) {
+                checkpoint = Checkpoint.resume(checkpointFile);
+                state = checkpoint.state();
+                done = checkpoint.steps();
+            } else {
+                state = MachineImage.load(fileName);
+                if (checkpointFile != null) {
+                    checkpoint = Checkpoint.create(checkpointFile, state);
+                }
+            }
+        } catch (IOException e) {  //ดักจับ error จากการอ่านไฟล์
+            System.err.println("error: can't open file " + (resume ? checkpointFile : fileName) + ": " + e.getMessage());
+            System.exit(1);
+        }
 
-                case 5: // jalr
-                    JType(state.mem[state.pc], arg); // J-Type
-                    regA = state.reg[arg[0]];
-                    regB = state.reg[arg[1]];
-                    state.reg[arg[1]] = state.pc + 1;
-                    state.pc = regA; // กระโดดไปยังตำแหน่งที่อยู่ใน regA แล้วบันทึก pc+1 ลงใน regB
-                    state.pc--;
-                    break;
+        if (checkpoint != null) {
+            checkpoint.setInterval(checkpointInterval);
+        }
 
-                case 6: // bhalt
-                    OType(state.mem[state.pc], arg); // O-Type
-                    i = -1; // หยุด execution program, หยุด loop
-                    break;
+        // Ctrl-C หรือ kill (ไม่ใช่ -9) ระหว่างรัน: ให้ลูปหยุดที่ช่วงถัดไปแล้วเขียน checkpoint ก่อน JVM ปิด
+        CountDownLatch finished = new CountDownLatch(1);
+        if (checkpoint != null) {
+            Checkpoint pausable = checkpoint;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                pausable.requestStop();
+                try {
+                    finished.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
 
-                case 7: // noop
-                    OType(state.mem[state.pc], arg); // no operation
-                    break;
+        decodedStruct decoded = new decodedStruct(state); // ถอดรหัสทุกคำสั่งครั้งเดียวตอนโหลด
+        PipelineModel timing = pipeline ? new PipelineModel(forwarding, branchPenalty, jalrPenalty) : null;
+        Profiler profiler = profileMode >= 0 ? new Profiler(profileMode, sampleInterval) : null;
+        LoopAccelerator accelerator = fastLoops ? new LoopAccelerator() : null;
+        LineMap lineMap = null;
+        if (profiler != null) {
+            String map = mapFile != null ? mapFile : LineMap.fileFor(fileName);
+            try {
+                if (mapFile != null || new File(map).exists()) {
+                    lineMap = LineMap.read(map);
+                }
+            } catch (IOException e) {
+                System.err.println("error: can't read line map " + map + ": " + e.getMessage());
+                System.exit(1);
             }
-            state.pc++;
-
-            if (total > MAXLINELENGTH) {
-                i = -1; // หยุด execution program
-                System.out.println("Max instruction limit reached");
+        }
+        long total;
+        try (TraceWriter trace = TraceWriter.open(traceLevel, traceFile)) {
+            trace.load(state); // บรรทัด memory[i]= แบบเดิม
+            if (trace.needsSteps()) {
+                total = trace.execute(state, decoded, maxSteps);
+            } else if (timing != null) {
+                total = timing.run(state, decoded, maxSteps);
+            } else if (caches) {
+                total = CacheModel.run(state, decoded, maxSteps, icache, dcache);
+            } else if (profiler != null) {
+                total = profiler.run(state, decoded, maxSteps);
+            } else if (accelerator != null) {
+                total = accelerator.run(state, decoded, maxSteps);
+            } else if (checkpoint == null && !jit && maxSteps < Integer.MAX_VALUE) {
+                total = execute(state, decoded, (int) maxSteps);
+            } else {
+                total = run(state, decoded, done, maxSteps, jit, checkpoint);
+            }
+            if (checkpoint != null && checkpoint.stopped()) {
+                System.out.println("stopped after " + total + " instructions, checkpoint written to "
+                        + checkpointFile + " (continue with --resume)");
+                return;
+            }
+            if (checkpoint != null) {
+                checkpoint.write(total);
+                checkpoint.close();
+            }
+            trace.finish(state, total, total > maxSteps);
+            if (timing != null) {
+                trace.flush(); // trace เขียนลง stdout ตัวเดียวกันและปิดมันตอนจบ จึงต้องพิมพ์ก่อนปิด
+                timing.report(System.out, 20);
+            }
+            if (profiler != null) {
+                trace.flush();
+                profiler.report(System.out, decoded, lineMap, 20);
+            }
+            if (accelerator != null) {
+                trace.flush();
+                System.out.println("fast-forwarded " + accelerator.skippedIterations() + " loop iterations ("
+                        + accelerator.skippedInstructions() + " of " + total + " instructions)");
             }
+            if (caches) {
+                trace.flush();
+                for (CacheModel cache : new CacheModel[]{icache, dcache, l2}) {
+                    if (cache != null) {
+                        cache.report(System.out, 10);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+            return;
+        } catch (PagedMemory.MemoryFault e) { // lw/sw หรือ pc ออกนอก memory
+            System.err.println("error: " + e.getMessage() + " (pc " + state.pc + ")");
+            System.exit(1);
+            return;
+        } finally {
+            finished.countDown();
+        }
+        if (traceLevel == TraceWriter.BINARY) {
+            System.out.println("total of " + total + " instructions executed, binary trace written to " + traceFile);
+        }
+        if (checkpoint != null) {
+            System.err.printf("%d checkpoint(s) in %.1f ms%n", checkpoint.written(), checkpoint.nanos() / 1e6);
         }
-        System.out.println("machine halted\n" +
-                "total of " + total + " instructions executed\n" +
-                "final state of machine:");
-        printState(state);
     }
-}
\ No newline at end of file
+}
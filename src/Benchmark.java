@@ -0,0 +1,421 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+// วัดความเร็วของ simulator เป็นจำนวนคำสั่งต่อวินาที (instructions/sec) บนโปรแกรมตัวอย่างใน src/
+// รัน: java Benchmark (ต้องรันจาก root ของโปรเจกต์ เพราะอ่านไฟล์จาก src/)
+//      java Benchmark memory  วัด heap ที่ใช้เมื่อมี state ค้างไว้พร้อมกัน 10,000 ตัว
+//      java Benchmark assembler [lines]  วัดจำนวนบรรทัดต่อวินาทีของ Assembler เทียบกับ StreamingAssembler
+//                                        บนโปรแกรมสังเคราะห์ขนาด lines บรรทัด (ค่าเริ่มต้น 500,000)
+//      java Benchmark checkpoint  เวลาที่เพิ่มขึ้นเมื่อเขียน checkpoint ระหว่างรันยาว (ทุก 1 วินาที และทุก 10 ms)
+//      java Benchmark pipeline  จำนวน cycle ต่อวินาทีของ PipelineModel บนโปรแกรมตัวอย่าง (forwarding เปิดและปิด)
+//      java Benchmark cache  instructions/sec เมื่อเปิด icache+dcache (CacheModel) เทียบกับ execute ปกติ
+//      java Benchmark profile  instructions/sec เมื่อเปิด Profiler แบบนับทุกคำสั่งและแบบ sample เทียบกับ execute ปกติ
+//      java Benchmark loops  instructions/sec (นับรวมคำสั่งที่ข้ามไป) เมื่อเปิด LoopAccelerator เทียบกับ execute ปกติ
+public class Benchmark {
+    private static final String[] PROGRAMS = {
+            "src/fibonacci.txt", "src/combination.txt", "src/multiplication.txt", "src/div.txt"
+    };
+    // ค่า input ที่ใหญ่ขึ้นเพื่อให้ลูปหลักทำงานนานพอจะวัดได้: {ตำแหน่งนับจากท้าย image, ค่าใหม่}
+    // (fibonacci: count, multiplication: three, div: num) ส่วน combination ใช้ค่าเดิมเพราะลูปต้องหารลงตัวพอดี
+    private static final int[][][] INPUTS = {
+            {{3, 1_000_000}},
+            {},
+            {{3, 1_000_000}},
+            {{3, 50_000_000}}
+    };
+    private static final long TARGET_INSTRUCTIONS = 50_000_000L; // จำนวนคำสั่งรวมต่อการวัดหนึ่งรอบ
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 5;
+    // วิธีรันที่วัด
+    private static final int LEGACY = 0; // ถอดรหัสทุกคำสั่ง (ลูปเดิม)
+    private static final int DECODED = 1; // BehavioralSimulator.execute
+    private static final int JIT = 2; // BlockCompiler (รวมเวลา compile block ในทุกการรัน)
+    private static final int CACHED = 3; // CacheModel.run กับ icache และ dcache 2-way LRU write-back
+    private static final int PROFILE_FULL = 4; // Profiler.FULL
+    private static final int PROFILE_SAMPLE = 5; // Profiler.SAMPLE ทุกประมาณ 1000 คำสั่ง
+    private static final int FAST_LOOPS = 6; // LoopAccelerator
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("memory")) {
+            memoryFootprint();
+            return;
+        }
+        if (args.length > 1 && args[0].equals("checkpoint")) {
+            checkpointRun(Long.parseLong(args[1]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("checkpoint")) {
+            checkpointOverhead();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("pipeline")) {
+            System.out.printf("%-24s %8s %16s %16s%n", "program", "CPI", "cycles/s", "cycles/s (no fwd)");
+            for (int p = 0; p < PROGRAMS.length; p++) {
+                int[] image = programImage(p);
+                double[] forwarding = measurePipeline(image, true);
+                double[] stalling = measurePipeline(image, false);
+                System.out.printf("%-24s %8.3f %16.0f %16.0f%n", PROGRAMS[p], forwarding[1], forwarding[0], stalling[0]);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("cache")) {
+            System.out.printf("%-24s %16s %16s %10s%n", "program", "decoded instr/s", "cached instr/s", "slowdown");
+            for (int p = 0; p < PROGRAMS.length; p++) {
+                int[] image = programImage(p);
+                double decoded = measure(image, DECODED);
+                double cached = measure(image, CACHED);
+                System.out.printf("%-24s %16.0f %16.0f %9.2fx%n", PROGRAMS[p], decoded, cached, decoded / cached);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("profile")) {
+            System.out.printf("%-24s %16s %16s %16s %10s %10s%n", "program", "decoded instr/s", "full instr/s",
+                    "sample instr/s", "full", "sample");
+            for (int p = 0; p < PROGRAMS.length; p++) {
+                int[] image = programImage(p);
+                double decoded = measure(image, DECODED);
+                double full = measure(image, PROFILE_FULL);
+                double sample = measure(image, PROFILE_SAMPLE);
+                System.out.printf("%-24s %16.0f %16.0f %16.0f %9.2fx %9.2fx%n", PROGRAMS[p], decoded, full, sample,
+                        decoded / full, decoded / sample);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("loops")) {
+            System.out.printf("%-24s %16s %16s %10s%n", "program", "decoded instr/s", "fast instr/s", "speedup");
+            for (int p = 0; p < PROGRAMS.length; p++) {
+                int[] image = programImage(p);
+                double decoded = measure(image, DECODED);
+                double fast = measure(image, FAST_LOOPS);
+                System.out.printf("%-24s %16.0f %16.0f %9.2fx%n", PROGRAMS[p], decoded, fast, fast / decoded);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("assembler")) {
+            assemblerThroughput(args.length > 1 ? Integer.parseInt(args[1]) : 500_000);
+            return;
+        }
+        System.out.printf("%-24s %16s %16s %16s%n", "program", "legacy instr/s", "decoded instr/s", "jit instr/s");
+        for (int p = 0; p < PROGRAMS.length; p++) {
+            int[] image = programImage(p);
+            double legacy = measure(image, LEGACY);
+            double decoded = measure(image, DECODED);
+            double jit = measure(image, JIT);
+            System.out.printf("%-24s %16.0f %16.0f %16.0f%n", PROGRAMS[p], legacy, decoded, jit);
+        }
+    }
+
+    // image ของโปรแกรมตัวอย่างที่ p พร้อม input ขนาดใหญ่จาก INPUTS
+    private static int[] programImage(int p) {
+        int[] image = Assembler.assemble(PROGRAMS[p]);
+        for (int[] input : INPUTS[p]) {
+            image[image.length - input[0]] = input[1];
+        }
+        return image;
+    }
+
+    // heap ที่ใช้ต่อ state: memory แบบเดิม (int[NUMMEMORY] ต่อ state) เทียบกับ PagedMemory ที่ copy จาก image เดียวกัน
+    // แบบเดิม 10,000 ตัวใช้ heap ราว 2.5GB ซึ่งเกิน heap ปกติ จึงวัดที่ 1,000 ตัวแล้วคูณเป็น 10,000
+    private static void memoryFootprint() {
+        int[] image = Assembler.assemble("src/fibonacci.txt");
+        image[image.length - 3] = 20; // count
+
+        int flatCount = 1_000;
+        long before = usedHeap();
+        int[][] flat = new int[flatCount][];
+        for (int i = 0; i < flatCount; i++) {
+            flat[i] = new int[65536];
+            System.arraycopy(image, 0, flat[i], 0, image.length);
+        }
+        long flatBytes = (usedHeap() - before) / flatCount;
+        if (flat[flatCount - 1][0] != image[0]) {
+            throw new IllegalStateException(); // กันไม่ให้ JIT ตัด array ทิ้ง
+        }
+        flat = null;
+
+        int pagedCount = 10_000;
+        BehavioralSimulator.stateStruct initial = BehavioralSimulator.newState(image);
+        BehavioralSimulator.decodedStruct program = new BehavioralSimulator.decodedStruct(initial);
+        before = usedHeap();
+        BehavioralSimulator.stateStruct[] states = new BehavioralSimulator.stateStruct[pagedCount];
+        for (int i = 0; i < pagedCount; i++) {
+            states[i] = initial.copy();
+            BehavioralSimulator.execute(states[i], new BehavioralSimulator.decodedStruct(program), Integer.MAX_VALUE - 1);
+        }
+        long pagedBytes = (usedHeap() - before) / pagedCount;
+
+        System.out.printf("flat int[65536] memory: %,d bytes/state, %,d MB for 10,000 states (projected)%n",
+                flatBytes, flatBytes * 10_000 / (1 << 20));
+        System.out.printf("paged copy-on-write:    %,d bytes/state, %,d MB for 10,000 states (%d page(s) each after running fibonacci)%n",
+                pagedBytes, pagedBytes * pagedCount / (1 << 20), states[0].mem.allocatedPages());
+    }
+
+    // โปรแกรมที่เขียน memory สอง page ทุกรอบของลูป ทำให้ทุก checkpoint มี page ที่เปลี่ยน
+    private static final String CHECKPOINT_PROGRAM = String.join("\n",
+            "        lw 0 1 n",
+            "        lw 0 2 neg",
+            "loop    beq 1 0 done",
+            "        add 1 2 1",
+            "        sw 0 1 cnt",
+            "        lw 0 3 cnt",
+            "        sw 0 3 600",
+            "        beq 0 0 loop",
+            "done    halt",
+            "n       .fill 2000000000",
+            "neg     .fill -1",
+            "cnt     .fill 0");
+    private static final long CHECKPOINT_STEPS = 600_000_000L;
+
+    // รัน CHECKPOINT_STEPS คำสั่งโดยไม่มี checkpoint เทียบกับมี checkpoint ที่ interval ต่างๆ
+    // แต่ละแบบรันใน JVM แยกกัน (java Benchmark checkpoint <ms>) เพราะถ้ารันต่อกันใน JVM เดียว
+    // แบบที่รันก่อนจะได้โค้ดที่ JIT compile ดีกว่า ต่างกันถึง 30-40% ซึ่งกลบเวลาเขียน checkpoint จริงหมด
+    private static void checkpointOverhead() {
+        long[] intervals = {0, 1000, 10}; // 0 = ไม่เขียน checkpoint
+        String java = ProcessHandle.current().info().command().orElse("java");
+        String[] results = new String[intervals.length];
+        try {
+            for (int i = 0; i < intervals.length; i++) {
+                Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Benchmark",
+                        "checkpoint", Long.toString(intervals[i])).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                results[i] = new String(process.getInputStream().readAllBytes()).trim();
+                if (process.waitFor() != 0) {
+                    System.err.println("error: checkpoint run failed");
+                    System.exit(1);
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+
+        double none = Double.parseDouble(results[0].split(" ")[0]);
+        System.out.printf("%-22s %10s %10s %12s %14s%n", "checkpoint interval", "seconds", "overhead", "checkpoints",
+                "ms/checkpoint");
+        System.out.printf("%-22s %10.3f%n", "none", none);
+        for (int i = 1; i < intervals.length; i++) {
+            String[] fields = results[i].split(" ");
+            double seconds = Double.parseDouble(fields[0]);
+            System.out.printf("%-22s %10.3f %9.2f%% %12s %14s%n", intervals[i] + " ms", seconds,
+                    (seconds / none - 1) * 100, fields[1], fields[2]);
+        }
+    }
+
+    // วัดหนึ่งแบบ: พิมพ์ "วินาที(ดีสุด) จำนวน checkpoint ms/checkpoint" (interval 0 = ไม่เขียน checkpoint)
+    private static void checkpointRun(long interval) {
+        int[] image = StreamingAssembler.assemble(CHECKPOINT_PROGRAM).words;
+        double best = Double.MAX_VALUE;
+        int count = 0;
+        double perCheckpoint = 0;
+        try {
+            Path file = Files.createTempFile("checkpoint", ".bin");
+            for (int round = 0; round < 3; round++) {
+                BehavioralSimulator.stateStruct state = BehavioralSimulator.newState(image);
+                BehavioralSimulator.decodedStruct decoded = new BehavioralSimulator.decodedStruct(state);
+                long start = System.nanoTime();
+                if (interval == 0) {
+                    BehavioralSimulator.run(state, decoded, 0, CHECKPOINT_STEPS, false, null);
+                } else {
+                    try (Checkpoint checkpoint = Checkpoint.create(file.toString(), state)) {
+                        checkpoint.setInterval(interval);
+                        BehavioralSimulator.run(state, decoded, 0, CHECKPOINT_STEPS, false, checkpoint);
+                        count = checkpoint.written();
+                        perCheckpoint = checkpoint.nanos() / 1e6 / count;
+                    }
+                }
+                best = Math.min(best, (System.nanoTime() - start) / 1e9);
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.printf(Locale.ROOT, "%.3f %d %.3f%n", best, count, perCheckpoint);
+    }
+
+    // lines/sec และ byte ที่ allocate ต่อบรรทัดของ assembler ทั้งสองแบบ (รวมเวลาอ่านไฟล์) บนไฟล์เดียวกัน
+    private static void assemblerThroughput(int lines) {
+        Path source;
+        try {
+            source = Files.createTempFile("synthetic", ".txt");
+            writeSyntheticProgram(source, lines);
+        } catch (IOException e) {
+            System.err.println("error: can't write synthetic program: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        String fileName = source.toString();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        System.out.printf("%-20s %14s %16s%n", "assembler", "lines/s", "bytes alloc/line");
+        int[] expected = null;
+        for (int streaming = 0; streaming < 2; streaming++) {
+            double best = 0;
+            long allocated = Long.MAX_VALUE;
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+                long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                int[] image;
+                try {
+                    image = streaming == 1 ? StreamingAssembler.assembleFile(fileName).words : Assembler.assemble(fileName);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                double perSecond = lines / ((System.nanoTime() - start) / 1e9);
+                long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+                if (expected == null) {
+                    expected = image;
+                } else if (!Arrays.equals(expected, image)) {
+                    throw new IllegalStateException("assemblers disagree on " + fileName);
+                }
+                if (round >= WARMUP_ROUNDS) {
+                    best = Math.max(best, perSecond);
+                    allocated = Math.min(allocated, bytes);
+                }
+            }
+            System.out.printf("%-20s %14.0f %16.1f%n", streaming == 1 ? "streaming" : "two-pass", best,
+                    (double) allocated / lines);
+        }
+        try {
+            Files.delete(source);
+        } catch (IOException e) {
+            // ไฟล์ชั่วคราว ลบไม่ได้ก็ไม่เป็นไร
+        }
+    }
+
+    // โปรแกรมสังเคราะห์ประมาณ lines บรรทัด: block ละ 8 บรรทัดที่มี label, comment, การอ้าง label ย้อนหลัง
+    // และล่วงหน้า (beq/.fill) และ lw/sw ไปที่ data ต้นไฟล์ ใช้วัด assembler เท่านั้น (ไม่ได้ออกแบบให้รันจบ)
+    static void writeSyntheticProgram(Path path, int lines) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("        beq 0 0 start\n");
+            writer.write("one     .fill 1\n");
+            writer.write("scratch .fill 0\n");
+            writer.write("start   noop\n");
+            for (int block = 0, written = 4; written < lines; block++, written += 8) {
+                writer.write("        lw 0 1 one\n");
+                writer.write("b" + block + "      add 1 2 3\n");
+                writer.write("        nand 3 4 5    # comment\n");
+                writer.write("        beq 1 2 e" + block + "\n");
+                writer.write("        sw 0 5 scratch\n");
+                writer.write("        beq 0 0 b" + block + "\n");
+                writer.write("e" + block + "      noop\n");
+                writer.write("        .fill b" + block + "\n");
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // วัดหลายรอบแล้วเอาค่าที่ดีที่สุด เพื่อลดผลจาก JIT/GC
+    private static double measure(int[] image, int mode) {
+        BehavioralSimulator.stateStruct initial = BehavioralSimulator.newState(image);
+        double best = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+            long executed = 0;
+            long start = System.nanoTime();
+            while (executed < TARGET_INSTRUCTIONS) {
+                BehavioralSimulator.stateStruct state = initial.copy();
+                if (mode == LEGACY) {
+                    executed += executeLegacy(state);
+                } else {
+                    BehavioralSimulator.decodedStruct decoded = new BehavioralSimulator.decodedStruct(state);
+                    if (mode == JIT) {
+                        executed += BlockCompiler.execute(state, decoded, Integer.MAX_VALUE - 1);
+                    } else if (mode == PROFILE_FULL || mode == PROFILE_SAMPLE) {
+                        executed += new Profiler(mode == PROFILE_FULL ? Profiler.FULL : Profiler.SAMPLE, 1000)
+                                .run(state, decoded, Integer.MAX_VALUE - 1);
+                    } else if (mode == FAST_LOOPS) {
+                        executed += new LoopAccelerator().run(state, decoded, Integer.MAX_VALUE - 1);
+                    } else if (mode == CACHED) {
+                        executed += CacheModel.run(state, decoded, Integer.MAX_VALUE - 1,
+                                CacheModel.parse("icache", "assoc=2"), CacheModel.parse("dcache", "assoc=2"));
+                    } else {
+                        executed += BehavioralSimulator.execute(state, decoded, Integer.MAX_VALUE - 1);
+                    }
+                }
+            }
+            double perSecond = executed / ((System.nanoTime() - start) / 1e9);
+            if (round >= WARMUP_ROUNDS) {
+                best = Math.max(best, perSecond);
+            }
+        }
+        return best;
+    }
+
+    // เหมือน measure แต่รันผ่าน PipelineModel คืน {cycle ต่อวินาทีที่ดีที่สุด, CPI}
+    private static double[] measurePipeline(int[] image, boolean forwarding) {
+        BehavioralSimulator.stateStruct initial = BehavioralSimulator.newState(image);
+        double best = 0;
+        double cpi = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+            long executed = 0;
+            long cycles = 0;
+            long start = System.nanoTime();
+            while (executed < TARGET_INSTRUCTIONS) {
+                BehavioralSimulator.stateStruct state = initial.copy();
+                PipelineModel timing = new PipelineModel(forwarding, 2, 2);
+                executed += timing.run(state, new BehavioralSimulator.decodedStruct(state), Long.MAX_VALUE - 1);
+                cycles += timing.cycles();
+                cpi = timing.cpi();
+            }
+            double perSecond = cycles / ((System.nanoTime() - start) / 1e9);
+            if (round >= WARMUP_ROUNDS) {
+                best = Math.max(best, perSecond);
+            }
+        }
+        return new double[]{best, cpi};
+    }
+
+    // ลูปแบบเดิมก่อนมี decodedStruct: ถอดรหัส mem[pc] ใหม่ทุกคำสั่ง ใช้เป็น baseline ในการเปรียบเทียบ
+    private static int executeLegacy(BehavioralSimulator.stateStruct state) {
+        int total = 0;
+        for (int i = 1; i != 0; i++) {
+            total++;
+            int instruction = state.mem.get(state.pc);
+            int opcode = instruction >> 22;
+            int regA = (instruction & (7 << 19)) >> 19;
+            int regB = (instruction & (7 << 16)) >> 16;
+            int offset = BehavioralSimulator.convert(instruction & 0xFFFF);
+            switch (opcode) {
+                case 0:
+                    state.reg[instruction & 7] = state.reg[regA] + state.reg[regB];
+                    break;
+                case 1:
+                    state.reg[instruction & 7] = ~(state.reg[regA] & state.reg[regB]);
+                    break;
+                case 2:
+                    state.reg[regB] = state.mem.get(offset + state.reg[regA]);
+                    break;
+                case 3:
+                    state.mem.set(offset + state.reg[regA], state.reg[regB]);
+                    break;
+                case 4:
+                    if (state.reg[regA] == state.reg[regB]) {
+                        state.pc += offset;
+                    }
+                    break;
+                case 5:
+                    int target = state.reg[regA];
+                    state.reg[regB] = state.pc + 1;
+                    state.pc = target - 1;
+                    break;
+                case 6:
+                    i = -1;
+                    break;
+                default:
+                    break;
+            }
+            state.pc++;
+        }
+        return total;
+    }
+}
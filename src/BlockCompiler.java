@@ -0,0 +1,327 @@
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Tiered execution: เริ่มจาก interpreter (BehavioralSimulator.step) แล้วนับจำนวนครั้งที่เข้าแต่ละ basic block
+// (จุดเริ่มโปรแกรม หรือคำสั่งถัดจาก beq/jalr) เมื่อ block ไหนถูกเรียกถึง HOT_THRESHOLD ครั้ง
+// จะแปลงเส้นทางที่เริ่มจาก block นั้นเป็น source Java -> compile ด้วย javax.tools -> โหลดเป็น hidden class
+// ให้ JIT ของ JVM inline และเก็บ register ไว้ใน local variable ได้เอง
+//
+// เส้นทางที่ compile จะตามต่อผ่าน beq ที่กระโดดแน่นอน (regA == regB เช่น beq 0 0 loop) และ beq ที่ไม่กระโดด
+// beq ที่กระโดดออกนอกเส้นทางกลายเป็นทางออก ส่วน beq ที่กลับมาที่จุดเริ่มกลายเป็นลูปใน method เดียว
+// เส้นทางจบที่ jalr, halt (ให้ interpreter ทำ), คำสั่งที่เคยผ่านแล้ว หรือยาวครบ MAX_BLOCK_LENGTH
+//
+// ถ้า block กำลังจะ sw ลงตำแหน่งที่เป็นโค้ด จะคืนการทำงานให้ interpreter ทำ sw นั้นแทน แล้วทิ้ง block ที่ถูกเขียนทับ
+// ผลลัพธ์สุดท้าย (pc, reg, mem, จำนวนคำสั่ง) ต้องตรงกับ BehavioralSimulator.execute ทุกบิต
+// รวมถึงกรณี MemoryFault ภายใน block: lw/sw ที่ fault จะเขียน register, จำนวนคำสั่ง และ pc ที่ fault กลับก่อนโยนต่อ
+public class BlockCompiler {
+    private static final int HOT_THRESHOLD = 10_000; // compile มีราคาหลายสิบ ms จึงรอให้ block ร้อนจริงก่อน
+    private static final int MAX_BLOCK_LENGTH = 256; // จำกัดขนาด method ที่ generate
+    private static final int CACHE_SIZE = 256; // จำนวน block ที่เก็บไว้ใช้ซ้ำข้ามการรัน
+
+    // block ที่ compile แล้ว: steps[0] = จำนวนคำสั่งที่ทำไปแล้ว (block บวกเพิ่มเอง), steps[1] = จำนวนสูงสุดที่ยอมให้ทำ
+    // steps[2] = pc ของ lw/sw ที่เกิด MemoryFault (block เขียนก่อนโยน exception ต่อ)
+    // คืนค่า pc ถัดไป; ถ้า steps[0] ไม่เพิ่มแปลว่า block ไม่ได้ทำอะไร ให้ interpreter ทำคำสั่งที่ pc นั้นแทน
+    public interface CompiledBlock {
+        int run(int[] reg, PagedMemory mem, int codeLimit, long[] steps);
+    }
+
+    // block ที่ compile แล้วไม่มี state ของตัวเอง จึงใช้ซ้ำข้ามการรันได้ โดยใช้ source ที่ generate เป็น key
+    // เก็บแค่ CACHE_SIZE ตัวที่ใช้ล่าสุด (LRU): SimulatorDaemon รับโปรแกรมใหม่ได้ไม่จำกัด ตัวที่ถูกไล่ออกและไม่มีการรันไหนใช้อยู่แล้ว
+    // จึงถูก unload ได้ (hidden class ที่ไม่ได้ define แบบ STRONG)
+    private static final Map<String, CompiledBlock> compiledCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledBlock> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final BehavioralSimulator.stateStruct state;
+    private final BehavioralSimulator.decodedStruct decoded;
+    private final int[] hits; // จำนวนครั้งที่เข้า block ที่เริ่มต้นที่ pc นั้น
+    private final CompiledBlock[] blocks;
+    private final int[][] blockPcs; // address ของทุกคำสั่งที่อยู่ใน block (ใช้ตอนโค้ดถูกเขียนทับ)
+    private final List<Integer> compiledStarts = new ArrayList<>();
+    private final long[] steps = new long[3];
+    private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler(); // null ถ้ารันบน JRE -> ใช้ interpreter อย่างเดียว
+
+    public BlockCompiler(BehavioralSimulator.stateStruct state, BehavioralSimulator.decodedStruct decoded) {
+        this.state = state;
+        this.decoded = decoded;
+        hits = new int[decoded.size];
+        blocks = new CompiledBlock[decoded.size];
+        blockPcs = new int[decoded.size][];
+    }
+
+    // เหมือน BehavioralSimulator.execute(state, decoded, maxSteps) แต่ส่ง block ที่ร้อนไปรันแบบ compile แล้ว
+    public static int execute(BehavioralSimulator.stateStruct state, BehavioralSimulator.decodedStruct decoded, int maxSteps) {
+        return new BlockCompiler(state, decoded).run(maxSteps);
+    }
+
+    public int run(int maxSteps) {
+        steps[0] = 0;
+        steps[1] = maxSteps;
+        boolean blockStart = true; // pc ปัจจุบันเป็นจุดเริ่มของ block (เริ่มโปรแกรม หรือหลัง beq/jalr)
+        boolean forceInterpret = false; // block ที่ pc นี้เพิ่งคืนมาโดยไม่ได้ทำอะไร ให้ interpreter ทำคำสั่งนั้น
+
+        while (true) {
+            int pc = state.pc;
+            if (!forceInterpret && pc >= 0 && pc < blocks.length) {
+                CompiledBlock block = blocks[pc];
+                if (block != null) {
+                    long before = steps[0];
+                    try {
+                        state.pc = block.run(state.reg, state.mem, decoded.size, steps);
+                    } catch (PagedMemory.MemoryFault e) {
+                        state.pc = (int) steps[2]; // pc ของคำสั่งที่ fault เหมือน interpreter
+                        throw e;
+                    }
+                    forceInterpret = steps[0] == before;
+                    blockStart = true;
+                    continue;
+                }
+                if (blockStart && ++hits[pc] == HOT_THRESHOLD) {
+                    compile(pc);
+                }
+            }
+            forceInterpret = false;
+
+            // ดูคำสั่งก่อนทำ เพื่อรู้ว่าเป็น sw ที่เขียนทับโค้ด หรือเป็นจุดจบ block
+            int opcode = 7;
+            int storeAddress = -1;
+            if (pc >= 0 && pc < decoded.size) {
+                int base = pc * BehavioralSimulator.decodedStruct.STRIDE;
+                opcode = decoded.code[base + BehavioralSimulator.decodedStruct.OPCODE];
+                if (opcode == 3) {
+                    storeAddress = decoded.code[base + BehavioralSimulator.decodedStruct.OPERAND]
+                            + state.reg[decoded.code[base + BehavioralSimulator.decodedStruct.REGA]];
+                }
+            }
+
+            steps[0]++;
+            boolean running = BehavioralSimulator.step(state, decoded);
+            if (storeAddress >= 0 && storeAddress < decoded.size) {
+                invalidate(storeAddress);
+            }
+            blockStart = opcode == 4 || opcode == 5;
+
+            if (!running) {
+                break;
+            }
+            if (steps[0] > maxSteps) {
+                break;
+            }
+        }
+        return (int) steps[0];
+    }
+
+    // จำนวนคำสั่งที่ทำไปแล้วในการ run ล่าสุด (รวมคำสั่งที่ fault ถ้า run จบด้วย MemoryFault)
+    public long executed() {
+        return steps[0];
+    }
+
+    // ทิ้ง block ที่มีคำสั่งที่ address ถูกเขียนทับ แล้วเริ่มนับความร้อนใหม่
+    private void invalidate(int address) {
+        for (int i = compiledStarts.size() - 1; i >= 0; i--) {
+            int start = compiledStarts.get(i);
+            for (int pc : blockPcs[start]) {
+                if (pc == address) {
+                    blocks[start] = null;
+                    blockPcs[start] = null;
+                    hits[start] = 0;
+                    compiledStarts.remove(i);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void compile(int start) {
+        if (compiler == null) {
+            return;
+        }
+        int[] code = decoded.code;
+        int stride = BehavioralSimulator.decodedStruct.STRIDE;
+
+        // เดินตามเส้นทางจาก start เพื่อหาคำสั่งที่จะอยู่ใน block
+        List<Integer> trace = new ArrayList<>();
+        Set<Integer> visited = new HashSet<>();
+        int pc = start;
+        boolean loops = false; // เส้นทางวนกลับมาที่ start
+        while (trace.size() < MAX_BLOCK_LENGTH && pc >= 0 && pc < decoded.size && !visited.contains(pc)) {
+            int base = pc * stride;
+            int opcode = code[base + BehavioralSimulator.decodedStruct.OPCODE];
+            if (opcode == 6) {
+                break; // halt ให้ interpreter ทำ
+            }
+            trace.add(pc);
+            visited.add(pc);
+            if (opcode == 5) {
+                break;
+            }
+            if (opcode == 4 && code[base + BehavioralSimulator.decodedStruct.REGA] == code[base + BehavioralSimulator.decodedStruct.REGB]) {
+                pc = pc + 1 + code[base + BehavioralSimulator.decodedStruct.OPERAND]; // กระโดดแน่นอน ตามไปเลย
+            } else {
+                pc++;
+            }
+            if (pc == start) {
+                loops = true;
+                break;
+            }
+        }
+        if (trace.isEmpty()) {
+            return;
+        }
+
+        String className = "CompiledBlock_" + start;
+        String source = generate(className, start, trace, loops, pc);
+        try {
+            CompiledBlock block;
+            synchronized (compiledCache) {
+                block = compiledCache.get(source);
+            }
+            if (block == null) {
+                byte[] bytes = compileSource(className, source);
+                Class<?> hidden = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+                block = (CompiledBlock) MethodHandles.lookup()
+                        .findConstructor(hidden, MethodType.methodType(void.class)).invoke();
+                synchronized (compiledCache) {
+                    compiledCache.put(source, block);
+                }
+            }
+            blocks[start] = block;
+            blockPcs[start] = trace.stream().mapToInt(Integer::intValue).toArray();
+            compiledStarts.add(start);
+        } catch (Throwable e) {
+            System.err.println("warning: can't compile block at " + start + ": " + e.getMessage());
+        }
+    }
+
+    // แปลงคำสั่งใน block เป็น Java: register 8 ตัวเก็บใน r0-r7 แล้วเขียนกลับทุกจุดที่ออกจาก block
+    // ทุกรอบของลูปจะเช็คก่อนว่ายังเหลือ budget พอทำครบทั้งเส้นทาง ถ้าไม่พอให้ interpreter ทำต่อทีละคำสั่ง
+    private String generate(String className, int start, List<Integer> trace, boolean loops, int exitPc) {
+        int[] code = decoded.code;
+        int stride = BehavioralSimulator.decodedStruct.STRIDE;
+        int length = trace.size();
+        String writeBack = "reg[0] = r0; reg[1] = r1; reg[2] = r2; reg[3] = r3; reg[4] = r4; reg[5] = r5; reg[6] = r6; reg[7] = r7;";
+        StringBuilder src = new StringBuilder();
+        src.append("public class ").append(className).append(" implements BlockCompiler.CompiledBlock {\n");
+        src.append("  public int run(int[] reg, PagedMemory mem, int codeLimit, long[] steps) {\n");
+        src.append("    int r0 = reg[0], r1 = reg[1], r2 = reg[2], r3 = reg[3], r4 = reg[4], r5 = reg[5], r6 = reg[6], r7 = reg[7];\n");
+        src.append("    long total = steps[0];\n");
+        src.append("    long limit = steps[1] - ").append(length).append(";\n");
+        src.append("    while (true) {\n");
+        src.append("      if (total > limit) { ").append(exit(writeBack, "0", Integer.toString(start))).append(" }\n");
+
+        for (int k = 0; k < length; k++) {
+            int pc = trace.get(k);
+            int base = pc * stride;
+            int opcode = code[base + BehavioralSimulator.decodedStruct.OPCODE];
+            int regA = code[base + BehavioralSimulator.decodedStruct.REGA];
+            int regB = code[base + BehavioralSimulator.decodedStruct.REGB];
+            String a = "r" + regA;
+            String b = "r" + regB;
+            int operand = code[base + BehavioralSimulator.decodedStruct.OPERAND];
+            String executed = Integer.toString(k + 1);
+            switch (opcode) {
+                case 0: // add
+                    src.append("      r").append(operand).append(" = ").append(a).append(" + ").append(b).append(";\n");
+                    break;
+                case 1: // nand
+                    src.append("      r").append(operand).append(" = ~(").append(a).append(" & ").append(b).append(");\n");
+                    break;
+                case 2: // lw
+                    src.append("      try { ").append(b).append(" = mem.get(").append(operand).append(" + ").append(a).append("); }\n");
+                    src.append("      ").append(fault(writeBack, executed, pc)).append("\n");
+                    break;
+                case 3: // sw: ถ้าเขียนลงโค้ด ให้ออกไปให้ interpreter ทำ
+                    src.append("      { int address = ").append(operand).append(" + ").append(a).append(";\n");
+                    src.append("        if (address < codeLimit) { ").append(exit(writeBack, Integer.toString(k), Integer.toString(pc))).append(" }\n");
+                    src.append("        try { mem.set(address, ").append(b).append("); }\n");
+                    src.append("        ").append(fault(writeBack, executed, pc)).append(" }\n");
+                    break;
+                case 4: { // beq
+                    int target = pc + 1 + operand;
+                    if (regA == regB) {
+                        break; // กระโดดแน่นอน เส้นทางตามไปแล้ว
+                    }
+                    src.append("      if (").append(a).append(" == ").append(b).append(") { ");
+                    if (target == start) {
+                        src.append("total += ").append(executed).append("; continue;");
+                    } else {
+                        src.append(exit(writeBack, executed, Integer.toString(target)));
+                    }
+                    src.append(" }\n");
+                    break;
+                }
+                case 5: // jalr
+                    src.append("      { int target = ").append(a).append("; ").append(b).append(" = ").append(pc + 1).append(";\n");
+                    src.append("        ").append(exit(writeBack, executed, "target")).append(" }\n");
+                    break;
+                default: // noop
+                    break;
+            }
+        }
+
+        int lastOpcode = code[trace.get(length - 1) * stride + BehavioralSimulator.decodedStruct.OPCODE];
+        if (loops) {
+            src.append("      total += ").append(length).append(";\n");
+        } else if (lastOpcode != 5) {
+            src.append("      ").append(exit(writeBack, Integer.toString(length), Integer.toString(exitPc))).append("\n");
+        }
+        src.append("    }\n  }\n}\n");
+        return src.toString();
+    }
+
+    // โค้ดออกจาก block: เขียน register กลับ บวกจำนวนคำสั่ง แล้วคืน pc ถัดไป
+    private static String exit(String writeBack, String executed, String nextPc) {
+        return writeBack + " steps[0] = total + " + executed + "; return " + nextPc + ";";
+    }
+
+    // catch ของ lw/sw: เขียน state ณ คำสั่งที่ fault กลับ (จำนวนคำสั่งรวมคำสั่งนั้นเหมือน interpreter) แล้วโยนต่อ
+    private static String fault(String writeBack, String executed, int pc) {
+        return "catch (PagedMemory.MemoryFault e) { " + writeBack + " steps[0] = total + " + executed
+                + "; steps[2] = " + pc + "; throw e; }";
+    }
+
+    // compile source ใน memory แล้วคืน bytecode ของ class
+    private byte[] compileSource(String className, String source) {
+        Map<String, ByteArrayOutputStream> output = new HashMap<>();
+        JavaFileObject sourceFile = new SimpleJavaFileObject(
+                URI.create("string:///" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        JavaFileManager fileManager = new ForwardingJavaFileManager<>(compiler.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("bytes:///" + name + ".class"), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        output.put(name, bytes);
+                        return bytes;
+                    }
+                };
+            }
+        };
+        List<String> options = List.of("-classpath", System.getProperty("java.class.path"), "-g:none");
+        boolean ok = compiler.getTask(null, fileManager, null, options, null, List.of(sourceFile)).call();
+        if (!ok || !output.containsKey(className)) {
+            throw new IllegalStateException("javac failed for " + className);
+        }
+        return output.get(className).toByteArray();
+    }
+}
@@ -0,0 +1,299 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// cache หนึ่งระดับแบบ set-associative ที่นับแค่ hit/miss (ข้อมูลจริงยังอยู่ใน state.mem ผลการรันจึงไม่เปลี่ยน)
+// ขนาดทุกอย่างนับเป็น word: size = จำนวน set * associativity * blockSize โดย blockSize และจำนวน set ต้องเป็นกำลังของ 2
+// replacement: LRU, FIFO หรือ RANDOM
+// write policy: write-back + write-allocate (เขียนลง block ใน cache แล้วเขียนกลับตอนถูกไล่ออก)
+//               หรือ write-through + no-write-allocate (ส่งทุกการเขียนไประดับถัดไป miss แล้วไม่ดึง block เข้า)
+// ต่อกันเป็นลำดับชั้นได้ด้วย next (เช่น L1 I/D ใช้ L2 ตัวเดียวกัน) ระดับสุดท้ายถือว่าต่อกับ memory ที่ใช้ memoryLatency cycle
+// bookkeeping ทั้งหมดเป็น array ของ primitive ไม่มีการสร้าง object ระหว่างรัน
+public class CacheModel {
+    public static final int LRU = 0;
+    public static final int FIFO = 1;
+    public static final int RANDOM = 2;
+    private static final String[] REPLACEMENTS = {"lru", "fifo", "random"};
+
+    private final String name;
+    private final int ways;
+    private final int blockBits;
+    private final int setMask;
+    private final int replacement;
+    private final boolean writeBack;
+    private final int hitTime;
+    private CacheModel next; // ระดับถัดไป (null = memory)
+    private int memoryLatency = 100;
+
+    private final int[] tags; // [set * ways + way] เลข block (address >>> blockBits) หรือ -1 ถ้าว่าง
+    private final boolean[] dirty;
+    private final long[] stamp; // LRU: เวลาที่ใช้ล่าสุด, FIFO: เวลาที่ดึงเข้า
+    private long clock;
+    private int lastBlock = -1; // block ที่เข้าถึงล่าสุด (fetch ติดกันส่วนใหญ่อยู่ block เดียวกัน อ่านซ้ำไม่ต้องค้นใน set)
+    private int seed = 0x2545F491; // xorshift สำหรับ RANDOM (ค่าตั้งต้นคงที่ให้รันซ้ำได้ผลเดิม)
+
+    private long reads;
+    private long writes;
+    private long readMisses;
+    private long writeMisses;
+    private long writebacks;
+    private long[] missesAt = new long[0]; // จำนวน miss แยกตาม pc ของคำสั่งที่ทำให้ miss
+
+    public CacheModel(String name, int size, int ways, int blockSize, int replacement, boolean writeBack, int hitTime) {
+        if (Integer.bitCount(blockSize) != 1 || ways <= 0 || size <= 0 || size % (ways * blockSize) != 0
+                || Integer.bitCount(size / (ways * blockSize)) != 1) {
+            throw new IllegalArgumentException(name + ": size " + size + " must be a power-of-two number of sets * "
+                    + ways + " way(s) * " + blockSize + "-word blocks");
+        }
+        this.name = name;
+        this.ways = ways;
+        this.blockBits = Integer.numberOfTrailingZeros(blockSize);
+        this.setMask = size / (ways * blockSize) - 1;
+        this.replacement = replacement;
+        this.writeBack = writeBack;
+        this.hitTime = hitTime;
+        tags = new int[size / blockSize];
+        Arrays.fill(tags, -1);
+        dirty = new boolean[tags.length];
+        stamp = new long[tags.length];
+    }
+
+    // อ่านค่าจาก command line รูปแบบ "size=256,assoc=2,block=4,replace=lru,write=back,hit=1"
+    // (ส่วนที่ไม่ระบุใช้ค่าเริ่มต้นตามตัวอย่างนี้ แต่ assoc เริ่มที่ 1 คือ direct-mapped)
+    public static CacheModel parse(String name, String spec) {
+        int size = 256;
+        int ways = 1;
+        int blockSize = 4;
+        int replacement = LRU;
+        boolean writeBack = true;
+        int hitTime = 1;
+        for (String field : spec.isEmpty() ? new String[0] : spec.split(",")) {
+            int eq = field.indexOf('=');
+            String key = eq < 0 ? field : field.substring(0, eq);
+            String value = eq < 0 ? "" : field.substring(eq + 1);
+            switch (key) {
+                case "size":
+                    size = Integer.parseInt(value);
+                    break;
+                case "assoc":
+                    ways = Integer.parseInt(value);
+                    break;
+                case "block":
+                    blockSize = Integer.parseInt(value);
+                    break;
+                case "replace":
+                    replacement = Arrays.asList(REPLACEMENTS).indexOf(value);
+                    if (replacement < 0) {
+                        throw new IllegalArgumentException(name + ": unknown replacement policy " + value);
+                    }
+                    break;
+                case "write":
+                    if (!value.equals("back") && !value.equals("through")) {
+                        throw new IllegalArgumentException(name + ": write policy must be back or through");
+                    }
+                    writeBack = value.equals("back");
+                    break;
+                case "hit":
+                    hitTime = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException(name + ": unknown cache option " + key);
+            }
+        }
+        return new CacheModel(name, size, ways, blockSize, replacement, writeBack, hitTime);
+    }
+
+    public void setNext(CacheModel next) {
+        this.next = next;
+    }
+
+    // latency ของ memory หลังระดับสุดท้าย (cycle) ใช้คำนวณ AMAT
+    public void setMemoryLatency(int cycles) {
+        memoryLatency = cycles;
+    }
+
+    // การเข้าถึง word ที่ address จากคำสั่งที่ pc คืน true ถ้า hit
+    // ส่วนที่ hit เขียนให้สั้นเพื่อให้ JIT inline เข้าไปในลูปของ run ได้ ส่วนที่ miss แยกไปอยู่ใน miss()
+    public boolean access(int address, boolean write, int pc) {
+        int block = address >>> blockBits;
+        if (block == lastBlock && !write) {
+            reads++;
+            return true; // ยังเป็นช่องที่ใช้ล่าสุด ลำดับ LRU ไม่เปลี่ยน
+        }
+        int base = (block & setMask) * ways;
+        for (int i = base; i < base + ways; i++) {
+            if (tags[i] == block) {
+                hit(i, block, address, write, pc);
+                return true;
+            }
+        }
+        miss(base, block, address, write, pc);
+        return false;
+    }
+
+    private void hit(int index, int block, int address, boolean write, int pc) {
+        if (replacement == LRU) {
+            stamp[index] = ++clock;
+        }
+        lastBlock = block;
+        if (!write) {
+            reads++;
+            return;
+        }
+        writes++;
+        if (writeBack) {
+            dirty[index] = true;
+        } else if (next != null) {
+            next.access(address, true, pc);
+        }
+    }
+
+    private void miss(int base, int block, int address, boolean write, int pc) {
+        if (write) {
+            writes++;
+            writeMisses++;
+        } else {
+            reads++;
+            readMisses++;
+        }
+        if (pc >= missesAt.length) {
+            missesAt = Arrays.copyOf(missesAt, Math.max(pc + 1, missesAt.length * 2));
+        }
+        missesAt[pc]++;
+        if (write && !writeBack) { // no-write-allocate: ส่งต่อไปเขียนระดับถัดไปอย่างเดียว
+            if (next != null) {
+                next.access(address, true, pc);
+            }
+            return;
+        }
+
+        int victim = victim(base);
+        if (tags[victim] >= 0 && dirty[victim]) {
+            writebacks++;
+            if (next != null) {
+                next.access(tags[victim] << blockBits, true, pc);
+            }
+        }
+        if (next != null) {
+            next.access(address, false, pc); // ดึง block เข้ามา
+        }
+        tags[victim] = block;
+        dirty[victim] = write;
+        stamp[victim] = ++clock;
+        lastBlock = block;
+    }
+
+    // เลือกช่องที่จะใช้ใน set ที่เริ่มที่ base: ช่องว่างก่อน แล้วค่อยตาม replacement
+    private int victim(int base) {
+        int victim = base;
+        for (int i = base; i < base + ways; i++) {
+            if (tags[i] < 0) {
+                return i;
+            }
+            if (stamp[i] < stamp[victim]) {
+                victim = i;
+            }
+        }
+        if (replacement == RANDOM) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            victim = base + Math.floorMod(seed, ways);
+        }
+        return victim;
+    }
+
+    public long accesses() {
+        return reads + writes;
+    }
+
+    public long misses() {
+        return readMisses + writeMisses;
+    }
+
+    public double missRate() {
+        return accesses() == 0 ? 0 : (double) misses() / accesses();
+    }
+
+    public long misses(int pc) {
+        return pc < missesAt.length ? missesAt[pc] : 0;
+    }
+
+    // average memory access time (cycle) = hit time + miss rate * (AMAT ของระดับถัดไป หรือ memoryLatency)
+    public double amat() {
+        return hitTime + missRate() * (next != null ? next.amat() : memoryLatency);
+    }
+
+    // รันเหมือน BehavioralSimulator.execute (หยุดที่ halt หรือเมื่อทำเกิน maxSteps คำสั่ง) โดยทุกการ fetch ผ่าน icache
+    // และทุก lw/sw ผ่าน dcache (null ได้ทั้งคู่) คำสั่งทำงานผ่าน BehavioralSimulator.step จึงได้ผลเหมือนโหมดปกติ
+    public static long run(BehavioralSimulator.stateStruct state, BehavioralSimulator.decodedStruct decoded,
+                           long maxSteps, CacheModel icache, CacheModel dcache) {
+        long total = 0;
+        boolean running = true;
+        int fetchBits = icache != null ? icache.blockBits : 31;
+        int fetchBlock = -1; // block ของ icache ที่ fetch ล่าสุด
+        long sameBlock = 0; // fetch ที่อยู่ใน block เดียวกับครั้งก่อน (hit แน่นอน นับรวมทีหลัง)
+        try {
+            while (running) {
+                total++;
+                int pc = state.pc;
+                if (pc < 0 || pc >= decoded.size) {
+                    decoded.grow(state, pc); // โยน MemoryFault ถ้า pc อยู่นอก memory
+                }
+                if (icache != null) {
+                    if (pc >>> fetchBits == fetchBlock) {
+                        sameBlock++;
+                    } else {
+                        icache.access(pc, false, pc);
+                        fetchBlock = pc >>> fetchBits;
+                    }
+                }
+                int base = pc * BehavioralSimulator.decodedStruct.STRIDE;
+                int opcode = decoded.code[base + BehavioralSimulator.decodedStruct.OPCODE];
+                if (dcache != null && (opcode == 2 || opcode == 3)) { // lw, sw
+                    int address = decoded.code[base + BehavioralSimulator.decodedStruct.OPERAND]
+                            + state.reg[decoded.code[base + BehavioralSimulator.decodedStruct.REGA]];
+                    dcache.access(address, opcode == 3, pc);
+                }
+                running = BehavioralSimulator.step(state, decoded);
+                if (total > maxSteps) {
+                    running = false;
+                }
+            }
+        } finally {
+            if (icache != null) {
+                icache.reads += sameBlock;
+            }
+        }
+        return total;
+    }
+
+    // สรุปผลของ cache นี้ และ pc ที่ miss มากที่สุด (ไม่เกิน limit บรรทัด)
+    public void report(PrintStream out, int limit) {
+        out.printf("%s: %d words, %d-way, %d-word blocks, %s, write-%s, hit time %d%n", name,
+                tags.length << blockBits, ways, 1 << blockBits, REPLACEMENTS[replacement],
+                writeBack ? "back" : "through", hitTime);
+        out.printf("  accesses %d (reads %d, writes %d)  misses %d (reads %d, writes %d)  hit rate %.2f%%%n",
+                accesses(), reads, writes, misses(), readMisses, writeMisses, (1 - missRate()) * 100);
+        out.printf("  writebacks %d  AMAT %.3f cycles%n", writebacks, amat());
+
+        List<Integer> pcs = new ArrayList<>();
+        for (int pc = 0; pc < missesAt.length; pc++) {
+            if (missesAt[pc] > 0) {
+                pcs.add(pc);
+            }
+        }
+        if (pcs.isEmpty()) {
+            return;
+        }
+        pcs.sort((a, b) -> Long.compare(missesAt[b], missesAt[a]));
+        out.printf("  %8s %10s%n", "pc", "misses");
+        for (int i = 0; i < pcs.size() && i < limit; i++) {
+            out.printf("  %8d %10d%n", pcs.get(i), missesAt[pcs.get(i)]);
+        }
+        if (pcs.size() > limit) {
+            out.println("  ... " + (pcs.size() - limit) + " more pc(s) with misses");
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// checkpoint ของการรันที่ยาวมาก เก็บเป็น log ที่ต่อท้ายไปเรื่อยๆ ในไฟล์เดียว:
+//   header: MAGIC, VERSION, ขนาด memory, numMemory
+//   record: ความยาว, จำนวนคำสั่งที่ทำไปแล้ว (long), pc, halted, reg[0..7],
+//           จำนวน page ตามด้วย (index, PAGE_SIZE word) ของทุก page ที่ถูกเขียนตั้งแต่ record ก่อน, CRC32
+// record แรกมีทุก page ที่มีข้อมูล record ต่อๆ ไปมีเฉพาะ page ที่เปลี่ยน (incremental)
+// ถ้า process ถูก kill ระหว่างเขียน record สุดท้ายจะไม่ครบหรือ CRC ไม่ตรง ตอน resume จะตัดทิ้งแล้วใช้ record ก่อนหน้า
+//
+// ใช้เป็น BehavioralSimulator.Progress ได้: เขียน record ทุก interval (ค่าเริ่มต้น 1 วินาที) และเมื่อถูกขอให้หยุด
+public class Checkpoint implements Closeable, BehavioralSimulator.Progress {
+    static final int MAGIC = 0x4C43434B; // "LCCK"
+    static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 4 + 4;
+
+    private final FileChannel channel;
+    private final String fileName;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final CRC32 crc = new CRC32();
+    private final BehavioralSimulator.stateStruct state;
+    private long steps; // จำนวนคำสั่งตอน checkpoint ล่าสุด
+    private int written; // จำนวน record ที่เขียนไปในรอบนี้
+    private long nanos; // เวลารวมที่ใช้เขียน checkpoint
+    private long intervalNanos = 1_000_000_000L;
+    private long last = System.nanoTime(); // เวลาที่เขียน record ล่าสุด
+    private volatile boolean stopRequested;
+    private boolean stopped;
+
+    private Checkpoint(FileChannel channel, String fileName, BehavioralSimulator.stateStruct state, long steps) {
+        this.channel = channel;
+        this.fileName = fileName;
+        this.state = state;
+        this.steps = steps;
+    }
+
+    // เริ่ม log ใหม่สำหรับ state (ยังไม่ได้รัน) และเขียน checkpoint แรกทันที
+    public static Checkpoint create(String fileName, BehavioralSimulator.stateStruct state) throws IOException {
+        FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putInt(state.mem.size()).putInt(state.numMemory).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        Checkpoint checkpoint = new Checkpoint(channel, fileName, state, 0);
+        checkpoint.write(0, true);
+        return checkpoint;
+    }
+
+    // สร้าง state จาก record ที่สมบูรณ์ทั้งหมดใน log แล้วเปิดไว้เขียนต่อท้าย (record ที่เขียนไม่ครบถูกตัดทิ้ง)
+    public static Checkpoint resume(String fileName) throws IOException {
+        FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.WRITE, StandardOpenOption.READ);
+        try {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.limit() < HEADER_SIZE || in.getInt() != MAGIC) {
+                throw new IOException(fileName + ": not a checkpoint file");
+            }
+            short version = in.getShort();
+            if (version != VERSION) {
+                throw new IOException(fileName + ": unsupported checkpoint version " + version);
+            }
+            int memorySize = in.getInt();
+            BehavioralSimulator.stateStruct state = new BehavioralSimulator.stateStruct();
+            if (memorySize != state.mem.size()) {
+                throw new IOException(fileName + ": memory size " + memorySize + " does not match " + state.mem.size());
+            }
+            state.numMemory = in.getInt();
+
+            long steps = -1;
+            int end = in.position(); // ท้าย record สมบูรณ์ตัวสุดท้าย
+            CRC32 crc = new CRC32();
+            int[] page = new int[PagedMemory.PAGE_SIZE];
+            while (in.remaining() >= 4) {
+                int length = in.getInt(end);
+                if (length < 0 || length + 8L > in.limit() - end) {
+                    break;
+                }
+                crc.reset();
+                crc.update(in.slice(end + 4, length));
+                if ((int) crc.getValue() != in.getInt(end + 4 + length)) {
+                    break;
+                }
+                in.position(end + 4);
+                steps = in.getLong();
+                state.pc = in.getInt();
+                state.halted = in.get() != 0;
+                for (int r = 0; r < state.reg.length; r++) {
+                    state.reg[r] = in.getInt();
+                }
+                int pages = in.getInt();
+                for (int i = 0; i < pages; i++) {
+                    int index = in.getInt();
+                    in.asIntBuffer().get(page);
+                    in.position(in.position() + page.length * 4);
+                    state.mem.setPage(index, page);
+                }
+                end += 4 + length + 4;
+                in.position(end);
+            }
+            if (steps < 0) {
+                throw new IOException(fileName + ": no complete checkpoint");
+            }
+            channel.truncate(end);
+            channel.position(end);
+            state.mem.clearDirty();
+            return new Checkpoint(channel, fileName, state, steps);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public void setInterval(long millis) {
+        intervalNanos = millis * 1_000_000;
+    }
+
+    // ขอให้ run หยุดที่ช่วงถัดไปหลังเขียน checkpoint (เรียกจาก thread อื่นได้ เช่น shutdown hook)
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    // run หยุดเพราะ requestStop (ไม่ใช่เพราะ halt หรือครบ budget)
+    public boolean stopped() {
+        return stopped;
+    }
+
+    @Override
+    public boolean proceed(BehavioralSimulator.stateStruct state, long total) throws IOException {
+        if (stopRequested) {
+            write(total);
+            stopped = true;
+            return false;
+        }
+        long now = System.nanoTime();
+        if (now - last >= intervalNanos) {
+            write(total);
+            last = now;
+        }
+        return true;
+    }
+
+    // state ที่ checkpoint นี้ดูแล (ตอน resume คือ state ที่โหลดจาก log)
+    public BehavioralSimulator.stateStruct state() {
+        return state;
+    }
+
+    // จำนวนคำสั่งที่ทำไปแล้วตอน checkpoint ล่าสุด
+    public long steps() {
+        return steps;
+    }
+
+    public String fileName() {
+        return fileName;
+    }
+
+    public int written() {
+        return written;
+    }
+
+    public long nanos() {
+        return nanos;
+    }
+
+    // ต่อท้าย record ของ state ปัจจุบัน (pc, register, page ที่เปลี่ยน) หลังทำไปแล้ว total คำสั่ง
+    public void write(long total) throws IOException {
+        write(total, false);
+    }
+
+    // all: เขียนทุก page ที่มีข้อมูล ไม่ใช่เฉพาะที่เปลี่ยน (record แรก)
+    private void write(long total, boolean all) throws IOException {
+        long start = System.nanoTime();
+        PagedMemory mem = state.mem;
+        int pages = 0;
+        for (int i = 0; i < mem.pageCount(); i++) {
+            if ((all || mem.isDirty(i)) && mem.page(i) != null) {
+                pages++;
+            }
+        }
+        int length = 8 + 4 + 1 + 4 * state.reg.length + 4 + pages * (4 + 4 * PagedMemory.PAGE_SIZE);
+        if (buffer.capacity() < length + 8) {
+            buffer = ByteBuffer.allocate(length + 8);
+        }
+        buffer.clear();
+        buffer.putInt(length).putLong(total).putInt(state.pc).put((byte) (state.halted ? 1 : 0));
+        for (int value : state.reg) {
+            buffer.putInt(value);
+        }
+        buffer.putInt(pages);
+        for (int i = 0; i < mem.pageCount(); i++) {
+            if ((all || mem.isDirty(i)) && mem.page(i) != null) {
+                buffer.putInt(i);
+                buffer.asIntBuffer().put(mem.page(i));
+                buffer.position(buffer.position() + 4 * PagedMemory.PAGE_SIZE);
+            }
+        }
+        crc.reset();
+        crc.update(buffer.array(), 4, length);
+        buffer.putInt((int) crc.getValue()).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        mem.clearDirty();
+        steps = total;
+        written++;
+        nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
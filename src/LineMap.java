@@ -0,0 +1,90 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// ไฟล์ debug ที่โยง address ใน machine code กลับไปที่บรรทัดของ source (เขียนโดย java Assembler --map)
+// รูปแบบข้อความ บรรทัดละหนึ่งรายการ:
+//   label <ชื่อ> <address>
+//   <address> <บรรทัดใน source> <คำสั่งใน source ไม่รวม label และ comment>
+// บรรทัดที่ขึ้นต้นด้วย # เป็น comment
+public class LineMap {
+    private final TreeMap<Integer, String> labels = new TreeMap<>(); // address -> label (label แรกถ้ามีหลายตัว)
+    private final Map<Integer, Integer> lines = new HashMap<>();
+    private final Map<Integer, String> sources = new HashMap<>();
+
+    public void addLabel(String name, int address) {
+        labels.putIfAbsent(address, name);
+    }
+
+    public void add(int address, int line, String source) {
+        lines.put(address, line);
+        sources.put(address, source);
+    }
+
+    public static LineMap read(String fileName) throws IOException {
+        LineMap map = new LineMap();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(" ", 3);
+                try {
+                    if (parts[0].equals("label")) {
+                        map.addLabel(parts[1], Integer.parseInt(parts[2]));
+                    } else {
+                        map.add(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), parts.length > 2 ? parts[2] : "");
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException(fileName + ": line " + lineNumber + ": bad line map entry: " + line);
+                }
+            }
+        }
+        return map;
+    }
+
+    public void write(String fileName, String sourceName) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+            writer.write("# line map of " + sourceName + ": \"label <name> <address>\" and \"<address> <line> <source>\"");
+            writer.newLine();
+            for (Map.Entry<Integer, String> label : labels.entrySet()) {
+                writer.write("label " + label.getValue() + " " + label.getKey());
+                writer.newLine();
+            }
+            for (int address : new TreeMap<>(lines).keySet()) {
+                writer.write(address + " " + lines.get(address) + " " + sources.get(address));
+                writer.newLine();
+            }
+        }
+    }
+
+    // ตำแหน่งในรูป label+offset จาก label ที่ใกล้ที่สุดก่อนหรือที่ address นี้ (null ถ้าไม่มี label ก่อนหน้า)
+    public String label(int address) {
+        Map.Entry<Integer, String> label = labels.floorEntry(address);
+        if (label == null) {
+            return null;
+        }
+        return address == label.getKey() ? label.getValue() : label.getValue() + "+" + (address - label.getKey());
+    }
+
+    // "line N: source" ของ address หรือ null ถ้าไม่มีใน map
+    public String source(int address) {
+        Integer line = lines.get(address);
+        return line == null ? null : "line " + line + ": " + sources.get(address);
+    }
+
+    // ชื่อไฟล์ map ที่คู่กับไฟล์ machine code (เปลี่ยนนามสกุลเป็น .map เช่น src/machine_code.txt -> src/machine_code.map)
+    public static String fileFor(String machineCodeFile) {
+        int dot = machineCodeFile.lastIndexOf('.');
+        int slash = Math.max(machineCodeFile.lastIndexOf('/'), machineCodeFile.lastIndexOf('\\'));
+        return (dot > slash ? machineCodeFile.substring(0, dot) : machineCodeFile) + ".map";
+    }
+}
@@ -0,0 +1,258 @@
+import java.util.Arrays;
+
+// รันโปรแกรมโดยข้าม loop นับรอบแบบง่ายไปทีเดียวแทนการทำทีละรอบ (ผลลัพธ์และจำนวนคำสั่งเท่ากับรันทีละคำสั่งทุกอย่าง)
+//
+// loop ที่ข้ามได้คือช่วง head..tail ที่ tail เป็น beq ที่กระโดดกลับเสมอ (regA == regB เช่น beq 0 0 loop)
+// และคำสั่งก่อนหน้าในช่วงเป็น:
+//   add ที่ destReg เป็น source ตัวหนึ่ง และ source อีกตัวเป็น register ที่ไม่มีใครใน loop เขียน (เช่น add 1 3 3, add 5 7 5)
+//     ทุกรอบ register ที่ถูกเขียนจึงเพิ่มขึ้นเท่าเดิมเสมอ (ค่าคงที่ต่อรอบ)
+//   beq ที่กระโดดออกนอก loop (ทางออก มีกี่ตัวก็ได้)
+//   noop
+// ค่าของ register ในรอบที่ i เป็น x0 + i*d (mod 2^32) จึงหาได้ว่า beq ทางออกตัวแรกจะเป็นจริงในรอบไหนด้วยการแก้
+// สมการ i*d ≡ c (mod 2^32) แล้วทำทุกรอบก่อนหน้านั้นในครั้งเดียว รอบสุดท้าย (ที่ออกจาก loop) ยังรันตามปกติ
+// ถ้า loop ไม่มีวันจบจะข้ามไปจนเกือบครบ maxSteps เพื่อให้หยุดที่คำสั่งเดียวกับการรันปกติ
+public class LoopAccelerator {
+    private static final byte UNKNOWN = 0;
+    private static final byte ELIGIBLE = 1;
+    private static final byte INELIGIBLE = 2;
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private byte[] verdicts = new byte[0]; // [pc ของ tail] ผลการตรวจรูปแบบ loop (ล้างเมื่อ sw เขียนทับโค้ดใน loop นั้น)
+    private int[] heads = new int[0]; // [pc ของ tail] head ของ loop ที่ตรวจไว้
+    private int checkedLow = Integer.MAX_VALUE; // ช่วง address ที่ครอบทุก loop ที่ตรวจไว้ (sw นอกช่วงนี้ไม่ต้องดู verdicts)
+    private int checkedHigh = -1;
+    private long skippedIterations;
+    private long skippedInstructions;
+
+    // รันเหมือน BehavioralSimulator.execute (หยุดที่ halt หรือเมื่อทำเกิน maxSteps คำสั่ง คืนจำนวนคำสั่งรวมทั้งที่ข้ามไป)
+    // ลูปเดียวกับ execute (ความหมายต้องตรงกับ switch ใน execute ทุกกรณี) ต่างกันแค่ beq ที่กระโดดกลับเสมอ
+    public long run(BehavioralSimulator.stateStruct state, BehavioralSimulator.decodedStruct decoded, long maxSteps) {
+        int[] reg = state.reg;
+        PagedMemory mem = state.mem;
+        int[] code = decoded.code;
+        int pc = state.pc;
+        long total = 0;
+        boolean halted = false;
+
+        try {
+            while (!halted) {
+                total++;
+                if (pc < 0 || pc >= decoded.size) {
+                    decoded.grow(state, pc);
+                    code = decoded.code;
+                }
+                int base = pc * BehavioralSimulator.decodedStruct.STRIDE;
+                int regA = code[base + BehavioralSimulator.decodedStruct.REGA];
+                int regB = code[base + BehavioralSimulator.decodedStruct.REGB];
+                int operand = code[base + BehavioralSimulator.decodedStruct.OPERAND];
+
+                switch (code[base + BehavioralSimulator.decodedStruct.OPCODE]) {
+                    case 0: // add
+                        reg[operand] = reg[regA] + reg[regB];
+                        break;
+
+                    case 1: // nand
+                        reg[operand] = ~(reg[regA] & reg[regB]);
+                        break;
+
+                    case 2: // lw
+                        reg[regB] = mem.get(operand + reg[regA]);
+                        break;
+
+                    case 3: { // sw
+                        int address = operand + reg[regA];
+                        mem.set(address, reg[regB]);
+                        if (address < decoded.size) {
+                            decoded.decode(address, reg[regB]);
+                            code = decoded.code;
+                            if (address >= checkedLow && address <= checkedHigh) {
+                                forget(address);
+                            }
+                        }
+                        break;
+                    }
+
+                    case 4: // beq
+                        if (reg[regA] == reg[regB]) {
+                            pc += operand;
+                            // beq ย้อนหลังที่กระโดดเสมอ: คำสั่งถัดไปคือต้นรอบใหม่ของ loop pc+1..(beq นี้)
+                            if (regA == regB && operand < 0 && total <= maxSteps && pc + 1 >= 0) {
+                                total += skip(state, decoded, pc + 1, pc - operand, maxSteps + 1 - total);
+                            }
+                        }
+                        break;
+
+                    case 5: { // jalr
+                        int target = reg[regA];
+                        reg[regB] = pc + 1;
+                        pc = target - 1;
+                        break;
+                    }
+
+                    case 6: // halt
+                        halted = true;
+                        state.halted = true;
+                        break;
+
+                    default: // noop และ opcode ที่ไม่รู้จัก
+                        break;
+                }
+                pc++;
+
+                if (total > maxSteps) {
+                    halted = true; // ครบ budget (รวมกรณีที่ข้ามจนครบพอดี ซึ่งหยุดที่ต้นรอบเหมือนรันทีละคำสั่ง)
+                }
+            }
+        } finally {
+            state.pc = pc;
+        }
+        return total;
+    }
+
+    // จำนวนรอบและจำนวนคำสั่งที่ข้ามไปด้วยการคำนวณตรงๆ
+    public long skippedIterations() {
+        return skippedIterations;
+    }
+
+    public long skippedInstructions() {
+        return skippedInstructions;
+    }
+
+    // ทำรอบเต็มของ loop head..tail ที่ทำได้โดยไม่ถึงรอบที่ออกจาก loop และไม่เกิน room คำสั่ง คืนจำนวนคำสั่งที่ข้ามไป
+    private long skip(BehavioralSimulator.stateStruct state, BehavioralSimulator.decodedStruct decoded, int head, int tail,
+                      long room) {
+        if (tail >= verdicts.length) {
+            verdicts = Arrays.copyOf(verdicts, Math.max(tail + 1, decoded.size));
+            heads = Arrays.copyOf(heads, verdicts.length);
+        }
+        if (verdicts[tail] == UNKNOWN) {
+            verdicts[tail] = eligible(decoded, head, tail) ? ELIGIBLE : INELIGIBLE;
+            heads[tail] = head;
+            checkedLow = Math.min(checkedLow, head);
+            checkedHigh = Math.max(checkedHigh, tail);
+        }
+        if (verdicts[tail] != ELIGIBLE) {
+            return 0;
+        }
+
+        int[] code = decoded.code;
+        int[] reg = state.reg;
+        int length = tail - head + 1;
+        long iterations = room / length;
+        if (iterations == 0) {
+            return 0;
+        }
+        // ค่าที่แต่ละ register เพิ่มขึ้นต่อรอบ (register ที่ใช้บวกไม่ถูกเขียนใน loop จึงใช้ค่าปัจจุบันได้)
+        int[] step = new int[reg.length];
+        for (int pc = head; pc < tail; pc++) {
+            int base = pc * BehavioralSimulator.decodedStruct.STRIDE;
+            if (code[base + BehavioralSimulator.decodedStruct.OPCODE] == 0) {
+                int regA = code[base + BehavioralSimulator.decodedStruct.REGA];
+                int regB = code[base + BehavioralSimulator.decodedStruct.REGB];
+                int operand = code[base + BehavioralSimulator.decodedStruct.OPERAND];
+                step[operand] += reg[operand == regA ? regB : regA];
+            }
+        }
+        // รอบแรก (นับจาก 0) ที่ beq ทางออกแต่ละตัวเป็นจริง: ค่าของ register ตอนถึง beq คือค่าต้นรอบ + ที่บวกไปก่อนหน้าในรอบ (partial)
+        int[] partial = new int[reg.length];
+        for (int pc = head; pc < tail; pc++) {
+            int base = pc * BehavioralSimulator.decodedStruct.STRIDE;
+            int opcode = code[base + BehavioralSimulator.decodedStruct.OPCODE];
+            int regA = code[base + BehavioralSimulator.decodedStruct.REGA];
+            int regB = code[base + BehavioralSimulator.decodedStruct.REGB];
+            int operand = code[base + BehavioralSimulator.decodedStruct.OPERAND];
+            if (opcode == 0) {
+                partial[operand] += reg[operand == regA ? regB : regA];
+            } else if (opcode == 4) {
+                int difference = (reg[regA] + partial[regA]) - (reg[regB] + partial[regB]);
+                iterations = Math.min(iterations, firstZero(difference, step[regA] - step[regB]));
+            }
+        }
+        if (iterations <= 0) {
+            return 0;
+        }
+
+        for (int r = 0; r < reg.length; r++) {
+            reg[r] += (int) (iterations * step[r]);
+        }
+        skippedIterations += iterations;
+        skippedInstructions += iterations * length;
+        return iterations * length;
+    }
+
+    // sw เขียนทับ address: ล้างผลตรวจของ loop ที่ครอบ address นั้น (loop อาจไม่ใช่แบบเดิมแล้ว) ส่วน loop อื่นใช้ผลเดิมต่อ
+    private void forget(int address) {
+        for (int tail = address; tail <= checkedHigh && tail < verdicts.length; tail++) {
+            if (verdicts[tail] != UNKNOWN && heads[tail] <= address) {
+                verdicts[tail] = UNKNOWN;
+            }
+        }
+    }
+
+    // i ที่น้อยที่สุด (>= 0) ที่ c + i*d ≡ 0 (mod 2^32) หรือ NEVER ถ้าไม่มี
+    static long firstZero(int c, int d) {
+        long e = -(long) c & 0xFFFFFFFFL;
+        long m = d & 0xFFFFFFFFL;
+        if (m == 0) {
+            return e == 0 ? 0 : NEVER;
+        }
+        int shift = Long.numberOfTrailingZeros(m);
+        if ((e & ((1L << shift) - 1)) != 0) {
+            return NEVER;
+        }
+        long odd = m >>> shift;
+        long inverse = odd; // inverse ของเลขคี่ mod 2^64 ด้วย Newton (แต่ละรอบได้ bit ถูกเพิ่มเป็นสองเท่า)
+        for (int i = 0; i < 5; i++) {
+            inverse *= 2 - odd * inverse;
+        }
+        long mask = (1L << (32 - shift)) - 1;
+        return ((e >>> shift) * inverse) & mask;
+    }
+
+    // ตรวจว่า loop head..tail เป็นรูปแบบที่ข้ามได้ (ดูคำอธิบายบนคลาส)
+    private static boolean eligible(BehavioralSimulator.decodedStruct decoded, int head, int tail) {
+        int[] code = decoded.code;
+        boolean[] written = new boolean[8];
+        for (int pc = head; pc < tail; pc++) {
+            int base = pc * BehavioralSimulator.decodedStruct.STRIDE;
+            if (code[base + BehavioralSimulator.decodedStruct.OPCODE] == 0) {
+                written[code[base + BehavioralSimulator.decodedStruct.OPERAND]] = true;
+            }
+        }
+        for (int pc = head; pc < tail; pc++) {
+            int base = pc * BehavioralSimulator.decodedStruct.STRIDE;
+            int opcode = code[base + BehavioralSimulator.decodedStruct.OPCODE];
+            int regA = code[base + BehavioralSimulator.decodedStruct.REGA];
+            int regB = code[base + BehavioralSimulator.decodedStruct.REGB];
+            int operand = code[base + BehavioralSimulator.decodedStruct.OPERAND];
+            switch (opcode) {
+                case 0: { // add: dest += register ที่ไม่ถูกเขียนใน loop
+                    if (operand != regA && operand != regB) {
+                        return false;
+                    }
+                    int increment = operand == regA ? regB : regA;
+                    if (written[increment]) {
+                        return false; // รวม add r r r (เพิ่มเป็นสองเท่า ไม่ใช่ค่าคงที่ต่อรอบ)
+                    }
+                    break;
+                }
+                case 4: { // beq: ต้องกระโดดออกนอก loop และไม่ใช่ beq ที่กระโดดเสมอ
+                    int target = pc + 1 + operand;
+                    if (regA == regB || (target >= head && target <= tail)) {
+                        return false;
+                    }
+                    break;
+                }
+                case 1: // nand
+                case 2: // lw
+                case 3: // sw
+                case 5: // jalr
+                case 6: // halt
+                    return false;
+                default: // noop และ opcode ที่ไม่รู้จัก
+                    break;
+            }
+        }
+        return true;
+    }
+}
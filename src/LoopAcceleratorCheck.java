@@ -0,0 +1,268 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+// ตรวจว่า LoopAccelerator ให้ผลเหมือน BehavioralSimulator.execute ทุกอย่าง (pc, register, memory, halt, จำนวนคำสั่ง)
+// บน input สุ่มของโปรแกรมตัวอย่างใน src/ และโปรแกรม loop สุ่ม (มีทั้ง loop ที่ข้ามได้และไม่ได้ ค่าที่ wrap รอบ 2^32
+// maxSteps ที่หมดกลาง loop, ทุก opcode, MemoryFault และโค้ดที่เขียนทับตัวเอง) LoopAccelerator.run มี switch ของ
+// ตัวเองแยกจาก execute จึงต้องให้ check นี้ครอบทุกคำสั่งเพื่อจับกรณีที่ความหมายของสองตัวไม่ตรงกัน
+// รัน: java LoopAcceleratorCheck [cases] [seed]  (ต้องรันจาก root ของโปรเจกต์ เพราะอ่านไฟล์จาก src/)
+// พิมพ์กรณีที่ไม่ตรงกันพร้อม source และ exit 1 ถ้ามี
+public class LoopAcceleratorCheck {
+    // โปรแกรมตัวอย่าง: {ไฟล์, label ของ input...}
+    private static final String[][] PROGRAMS = {
+            {"src/multiplication.txt", "five", "three"},
+            {"src/div.txt", "num", "denum"},
+            {"src/combination.txt", "five", "two"},
+            {"src/fibonacci.txt", "count"}
+    };
+    private static final int MAX_STEPS = 2_000_000;
+    private static final int MAX_PRINTED = 5;
+
+    private static int mismatches;
+    private static long skipped;
+
+    public static void main(String[] args) {
+        int cases = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        Random random = new Random(seed);
+        System.out.println("seed " + seed);
+
+        for (String[] program : PROGRAMS) {
+            int[] image = Assembler.assemble(program[0]);
+            Map<String, Integer> symbols = Assembler.symbols();
+            for (int i = 0; i < cases / 10; i++) {
+                int[] input = image.clone();
+                StringBuilder description = new StringBuilder(program[0]);
+                for (int j = 1; j < program.length; j++) {
+                    int value = random.nextInt(4) == 0 ? random.nextInt() : random.nextInt(601) - 300;
+                    input[symbols.get(program[j])] = value;
+                    description.append(' ').append(program[j]).append('=').append(value);
+                }
+                compare(description.toString(), input, random.nextInt(3) == 0 ? random.nextInt(5000) : MAX_STEPS);
+            }
+        }
+        for (int i = 0; i < cases; i++) {
+            String source = i % 4 == 0 ? patchedLoop(random) : randomProgram(random);
+            compare(source, StreamingAssembler.assemble(source).words,
+                    random.nextInt(3) == 0 ? random.nextInt(5000) : MAX_STEPS);
+        }
+
+        System.out.println((cases / 10 * PROGRAMS.length + cases) + " cases, " + skipped
+                + " instructions fast-forwarded, " + mismatches + " mismatches");
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    // รันทั้งสองแบบจาก image เดียวกันแล้วเทียบผล
+    private static void compare(String description, int[] image, int maxSteps) {
+        BehavioralSimulator.stateStruct plain = BehavioralSimulator.newState(image);
+        BehavioralSimulator.stateStruct fast = BehavioralSimulator.newState(image);
+        String expected;
+        String actual;
+        try {
+            long total = BehavioralSimulator.execute(plain, new BehavioralSimulator.decodedStruct(plain), maxSteps);
+            expected = outcome(plain, total, image.length);
+        } catch (PagedMemory.MemoryFault e) {
+            expected = e.getMessage() + " pc " + plain.pc;
+        }
+        LoopAccelerator accelerator = new LoopAccelerator();
+        try {
+            long total = accelerator.run(fast, new BehavioralSimulator.decodedStruct(fast), maxSteps);
+            actual = outcome(fast, total, image.length);
+        } catch (PagedMemory.MemoryFault e) {
+            actual = e.getMessage() + " pc " + fast.pc;
+        }
+        skipped += accelerator.skippedInstructions();
+        if (!expected.equals(actual)) {
+            mismatches++;
+            if (mismatches <= MAX_PRINTED) {
+                System.out.println("MISMATCH (max steps " + maxSteps + ")");
+                System.out.println(description);
+                System.out.println("  execute:         " + expected);
+                System.out.println("  LoopAccelerator: " + actual);
+            }
+        }
+    }
+
+    private static String outcome(BehavioralSimulator.stateStruct state, long total, int words) {
+        int[] memory = new int[words + 16];
+        for (int i = 0; i < memory.length; i++) {
+            memory[i] = state.mem.get(i);
+        }
+        return "total " + total + " halted " + state.halted + " pc " + state.pc + " reg " + Arrays.toString(state.reg)
+                + " mem " + Arrays.hashCode(memory);
+    }
+
+    // โปรแกรมที่มี loop 1-3 ตัวต่อกัน: โหลด register 1-7 จาก .fill แล้ววน loop ที่ body สุ่มจาก
+    // add แบบ r += s (ข้ามได้ถ้า s ไม่ถูกเขียนใน loop), noop, beq ทางออก และคำสั่งที่ทำให้ข้ามไม่ได้ครบทุก opcode
+    // (add/nand อื่นๆ, lw/sw ทั้ง data และ address สุ่มที่อาจ fault หรือเขียนทับโค้ด, jalr, halt)
+    // หลังออกจาก loop บางตัวจะเขียนทับคำสั่งแรกของ loop (sw) แล้ววนซ้ำอีกรอบ เพื่อตรวจการล้างผลตรวจ loop ที่จำไว้
+    private static String randomProgram(Random random) {
+        StringBuilder source = new StringBuilder();
+        StringBuilder data = new StringBuilder();
+        for (int r = 1; r <= 7; r++) {
+            source.append("        lw 0 ").append(r).append(" v").append(r).append('\n');
+        }
+        int loops = 1 + random.nextInt(3);
+        int jumps = 0;
+        for (int l = 0; l < loops; l++) {
+            source.append("l").append(l).append("      noop\n");
+            int length = 1 + random.nextInt(6);
+            for (int i = 0; i < length; i++) {
+                int kind = random.nextInt(12);
+                int a = random.nextInt(8);
+                int b = random.nextInt(8);
+                if (kind < 5) {
+                    int dest = random.nextInt(8);
+                    source.append("        add ").append(random.nextBoolean() ? dest + " " + a : a + " " + dest)
+                            .append(' ').append(dest).append('\n');
+                } else if (kind < 8) {
+                    source.append("        beq ").append(a).append(' ').append(b).append(" x").append(l).append('\n');
+                } else if (kind == 8) {
+                    source.append("        noop\n");
+                } else {
+                    switch (random.nextInt(8)) {
+                        case 0:
+                            source.append("        add ").append(a).append(' ').append(b).append(' ')
+                                    .append(random.nextInt(8)).append('\n');
+                            break;
+                        case 1:
+                            source.append("        nand ").append(a).append(' ').append(b).append(' ')
+                                    .append(random.nextInt(8)).append('\n');
+                            break;
+                        case 2:
+                            source.append("        lw 0 ").append(a).append(" v").append(1 + random.nextInt(7)).append('\n');
+                            break;
+                        case 3: // address สุ่ม: อาจ fault
+                            source.append("        lw ").append(a).append(' ').append(b).append(' ')
+                                    .append(random.nextInt(64)).append('\n');
+                            break;
+                        case 4:
+                            source.append("        sw 0 ").append(b).append(" scratch\n");
+                            break;
+                        case 5: // address สุ่ม: อาจ fault หรือเขียนทับโค้ด
+                            source.append("        sw ").append(a).append(' ').append(b).append(' ')
+                                    .append(random.nextInt(64)).append('\n');
+                            break;
+                        case 6: // jalr ไปคำสั่งถัดไป
+                            source.append("        lw 0 ").append(a).append(" jump").append(jumps).append('\n');
+                            source.append("        jalr ").append(a).append(' ').append(b).append('\n');
+                            source.append("j").append(jumps).append("      noop\n");
+                            data.append("jump").append(jumps).append("   .fill j").append(jumps).append('\n');
+                            jumps++;
+                            break;
+                        default:
+                            source.append("        halt\n");
+                            break;
+                    }
+                }
+            }
+            int same = random.nextInt(8);
+            source.append("        beq ").append(same).append(' ').append(same).append(" l").append(l).append('\n');
+            source.append("x").append(l).append("      noop\n");
+            if (random.nextBoolean()) {
+                // รอบสอง: เปลี่ยนคำสั่งแรกของ loop เป็น noop/add/nand/halt แล้วโหลด input ใหม่และกลับไปวนอีกครั้ง
+                // (ครั้งเดียว ใช้ pass เป็นตัวบอก)
+                source.append("        lw 0 6 pass").append(l).append('\n');
+                source.append("        beq 6 0 y").append(l).append('\n');
+                source.append("        sw 0 0 pass").append(l).append('\n');
+                source.append("        lw 0 6 patch").append(l).append('\n');
+                source.append("        sw 0 6 l").append(l).append('\n');
+                for (int r = 1; r <= 7; r++) {
+                    source.append("        lw 0 ").append(r).append(" v").append(r).append('\n'); // ให้รอบสองวนนานเท่ารอบแรก
+                }
+                source.append("        beq 0 0 l").append(l).append('\n');
+                source.append("y").append(l).append("      noop\n");
+                data.append("pass").append(l).append("   .fill 1\n");
+                data.append("patch").append(l).append("  .fill ").append(patch(random)).append('\n');
+            }
+        }
+        source.append("        halt\n");
+        for (int r = 1; r <= 7; r++) {
+            int value;
+            switch (random.nextInt(4)) {
+                case 0:
+                    value = random.nextInt(); // ค่าใหญ่: loop อาจต้อง wrap รอบ 2^32 หรือไม่จบ
+                    break;
+                case 1:
+                    value = random.nextBoolean() ? 1 : -1;
+                    break;
+                default:
+                    value = random.nextInt(41) - 20;
+                    break;
+            }
+            source.append("v").append(r).append("      .fill ").append(value).append('\n');
+        }
+        source.append("scratch .fill 0\n");
+        source.append(data);
+        return source.toString();
+    }
+
+    // loop นับรอบที่ข้ามได้แน่นอน วนครั้งแรกให้จำผลตรวจไว้ แล้วเขียนทับคำสั่งหนึ่งใน loop ด้วยคำสั่งสุ่ม
+    // (ส่วนใหญ่ทำให้ข้ามไม่ได้) และวนอีกครั้งด้วย input เดิม: ถ้าไม่ล้างผลตรวจเดิมจะข้ามผิด
+    private static String patchedLoop(Random random) {
+        int[] patches = {
+                instruction(7, 0, 0, 0), // noop
+                instruction(0, 2, 3, 2), // add 2 3 2 (ยังข้ามได้)
+                instruction(0, 1, 1, 1), // add 1 1 1
+                instruction(0, 3, 0, 2), // add 3 0 2 (copy)
+                instruction(1, 1, 7, 1), // nand 1 7 1
+                instruction(2, 0, 1, random.nextInt(4)), // lw 0 1 (word ต้นโปรแกรม)
+                instruction(3, 0, 2, 40), // sw 0 2 40
+                instruction(6, 0, 0, 0) // halt
+        };
+        int at = random.nextInt(4); // head (noop), add ตัวแรก, add ตัวที่สอง หรือ beq ทางออก
+        return String.join("\n",
+                "        lw 0 1 count",
+                "        lw 0 2 sum",
+                "        lw 0 3 step",
+                "        lw 0 7 minus",
+                "loop    noop",
+                "        add 1 7 1",
+                "        add 3 2 2",
+                "        beq 1 0 exit",
+                "        beq 0 0 loop",
+                "exit    lw 0 6 pass",
+                "        beq 6 0 done",
+                "        sw 0 0 pass",
+                "        lw 0 6 patch",
+                "        lw 0 5 target",
+                "        sw 5 6 0",
+                "        lw 0 1 count",
+                "        lw 0 2 sum",
+                "        beq 0 0 loop",
+                "done    halt",
+                "count   .fill " + (2 + random.nextInt(300)),
+                "sum     .fill " + random.nextInt(100),
+                "step    .fill " + (random.nextInt(21) - 10),
+                "minus   .fill -1",
+                "pass    .fill 1",
+                "patch   .fill " + patches[random.nextInt(patches.length)],
+                "target  .fill " + (4 + at),
+                "");
+    }
+
+    private static int instruction(int opcode, int regA, int regB, int operand) {
+        return (opcode << 22) | (regA << 19) | (regB << 16) | (operand & 0xFFFF);
+    }
+
+    // machine code ของคำสั่งที่ใช้เขียนทับหัว loop
+    private static int patch(Random random) {
+        int a = random.nextInt(8);
+        int b = random.nextInt(8);
+        switch (random.nextInt(5)) {
+            case 0:
+                return instruction(7, 0, 0, 0); // noop
+            case 1:
+                return instruction(0, a, b, random.nextBoolean() ? a : b); // add แบบ r += s
+            case 2:
+                return instruction(0, a, b, random.nextInt(8)); // add อื่นๆ (เช่น copy)
+            case 3:
+                return instruction(1, a, b, random.nextInt(8)); // nand
+            default:
+                return instruction(6, 0, 0, 0); // halt
+        }
+    }
+}
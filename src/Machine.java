@@ -0,0 +1,131 @@
+// เครื่องหนึ่งเครื่องสำหรับเรียกใช้เป็น library ใน JVM ที่รันค้างไว้ (ไม่อ่านไฟล์ ไม่พิมพ์ ไม่ System.exit)
+// ตัวอย่าง:
+//   MachineImage image = StreamingAssembler.assemble(source); // โยน AssemblyError พร้อมเลขบรรทัดถ้า source ผิด
+//   Machine machine = new Machine(image);                     // หรือ new Machine(image, true) เพื่อใช้ BlockCompiler
+//   machine.run(1_000_000);                                   // โยน PagedMemory.MemoryFault ถ้า lw/sw/pc ออกนอก memory
+//   int result = machine.register(1);
+// ทุก method เป็น synchronized จึงดู state จาก thread อื่นระหว่างที่อีก thread กำลังรันได้
+// เครื่องต่างตัวกันไม่มี state ร่วมกัน ใช้ copy() ทำหลายเครื่องจาก image เดียวกันได้ถูกๆ (copy-on-write)
+public class Machine {
+    private final BehavioralSimulator.stateStruct state;
+    private final BehavioralSimulator.decodedStruct decoded;
+    private final boolean jit;
+    private BlockCompiler compiler; // สร้างตอนรันครั้งแรกเมื่อใช้ jit และทิ้งเมื่อ memory ถูกแก้จากภายนอก
+    private long steps;
+
+    public Machine(int[] image) {
+        this(image, false);
+    }
+
+    // jit: compile loop ที่ร้อนด้วย BlockCompiler (คุ้มเมื่อรันนานหลายล้านคำสั่ง)
+    public Machine(int[] image, boolean jit) {
+        this(BehavioralSimulator.newState(image), jit);
+    }
+
+    // เริ่มที่ entry point ของ image
+    public Machine(MachineImage image) {
+        this(image, false);
+    }
+
+    public Machine(MachineImage image, boolean jit) {
+        this(image.words, jit);
+        state.pc = image.entry;
+    }
+
+    private Machine(BehavioralSimulator.stateStruct state, boolean jit) {
+        this(state, new BehavioralSimulator.decodedStruct(state), jit);
+    }
+
+    private Machine(BehavioralSimulator.stateStruct state, BehavioralSimulator.decodedStruct decoded, boolean jit) {
+        this.state = state;
+        this.decoded = decoded;
+        this.jit = jit;
+    }
+
+    // ทำงานไม่เกิน n คำสั่ง (หยุดก่อนถ้าเจอ halt) คืนจำนวนคำสั่งที่ทำไป
+    public synchronized int step(int n) {
+        if (n <= 0 || state.halted) {
+            return 0;
+        }
+        int executed;
+        if (jit) {
+            if (compiler == null) {
+                compiler = new BlockCompiler(state, decoded);
+            }
+            executed = compiler.run(n - 1);
+        } else {
+            executed = BehavioralSimulator.execute(state, decoded, n - 1);
+        }
+        steps += executed;
+        return executed;
+    }
+
+    // รันจนเจอ halt (ถ้าโปรแกรมไม่มีวันจบจะไม่คืนค่า ใช้ run(maxSteps) แทน)
+    public long run() {
+        return run(Long.MAX_VALUE);
+    }
+
+    // รันจนเจอ halt หรือครบ maxSteps คำสั่ง คืนจำนวนคำสั่งที่ทำไป
+    public synchronized long run(long maxSteps) {
+        long executed = 0;
+        while (!state.halted && executed < maxSteps) {
+            executed += step((int) Math.min(maxSteps - executed, Integer.MAX_VALUE));
+        }
+        return executed;
+    }
+
+    // copy เครื่องทั้งหมด (memory และผลถอดรหัสแชร์กันแบบ copy-on-write)
+    public synchronized Machine copy() {
+        Machine copy = new Machine(state.copy(), new BehavioralSimulator.decodedStruct(decoded), jit);
+        copy.steps = steps;
+        return copy;
+    }
+
+    public synchronized boolean halted() {
+        return state.halted;
+    }
+
+    // จำนวนคำสั่งที่ทำไปแล้วทั้งหมด (ไม่นับรอบที่จบด้วย MemoryFault)
+    public synchronized long steps() {
+        return steps;
+    }
+
+    public synchronized int pc() {
+        return state.pc;
+    }
+
+    // ย้าย pc (เช่นรันต่อหลัง halt)
+    public synchronized void setPc(int pc) {
+        state.pc = pc;
+        state.halted = false;
+    }
+
+    public synchronized int register(int index) {
+        return state.reg[index];
+    }
+
+    public synchronized int[] registers() {
+        return state.reg.clone();
+    }
+
+    public synchronized void setRegister(int index, int value) {
+        state.reg[index] = value;
+    }
+
+    // จำนวน word ของ image ที่โหลดไว้
+    public synchronized int imageSize() {
+        return state.numMemory;
+    }
+
+    public synchronized int memory(int address) {
+        return state.mem.get(address);
+    }
+
+    public synchronized void setMemory(int address, int value) {
+        state.mem.set(address, value);
+        if (address < decoded.size) {
+            decoded.decode(address, value); // เขียนทับโค้ด
+            compiler = null;
+        }
+    }
+}
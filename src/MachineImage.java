@@ -0,0 +1,278 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+// โปรแกรมที่ assemble แล้ว (machine code) ในรูปแบบไฟล์ข้อความเดิม หรือแบบ binary
+//
+// รูปแบบ binary (big-endian):
+//   int   MAGIC ("LCBI")
+//   short VERSION, short flags (FLAG_SYMBOLS = มี symbol table)
+//   int   จำนวน word, int entry point (pc เริ่มต้น)
+//   int[] word ทั้งหมด (เริ่มที่ byte 16 จึง map เป็น IntBuffer ได้ตรงๆ)
+//   ถ้ามี symbol table: int จำนวน label แล้วแต่ละ label เป็น short ความยาวชื่อ, ชื่อ (UTF-8), int address
+//
+// รัน converter: java MachineImage <input> <output> [--to=binary|text]
+// (input แยกรูปแบบจาก MAGIC อัตโนมัติ ถ้าไม่ระบุ --to จะแปลงเป็นรูปแบบตรงข้ามกับ input)
+// รูปแบบข้อความเก็บได้แค่ word: image ที่ entry ไม่ใช่ 0 แปลงเป็นข้อความไม่ได้ ส่วน label จะหายไป (มีคำเตือน)
+public class MachineImage {
+    static final int MAGIC = 0x4C434249; // "LCBI"
+    static final short VERSION = 1;
+    static final short FLAG_SYMBOLS = 1;
+    private static final int HEADER_SIZE = 16;
+    static final int MAX_WORDS = 65536; // ขนาด memory ของ simulator (image ที่ใหญ่กว่านี้โหลดไม่ได้)
+    static final int MAX_NAME_LENGTH = Short.MAX_VALUE; // ความยาวชื่อ label (byte) ที่เก็บใน short ได้
+
+    // image สร้างแล้วแก้ไม่ได้: โค้ดใน package อ่าน field ตรงๆ ได้ ส่วนผู้ใช้ภายนอกอ่านผ่าน words()/entry()/symbols()
+    final int[] words;
+    final int entry; // pc เริ่มต้น
+    final Map<String, Integer> symbols = new TreeMap<>(); // ว่างได้ (ไฟล์ข้อความไม่มี label)
+
+    public MachineImage(int[] words, int entry, Map<String, Integer> symbols) {
+        this.words = words.clone();
+        this.entry = entry;
+        this.symbols.putAll(symbols);
+    }
+
+    // word ทั้งหมดของ image (copy ใหม่ทุกครั้ง)
+    public int[] words() {
+        return words.clone();
+    }
+
+    public int entry() {
+        return entry;
+    }
+
+    // ชื่อ label -> address (แก้ไม่ได้)
+    public Map<String, Integer> symbols() {
+        return Collections.unmodifiableMap(symbols);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3
+                || (args.length == 3 && !args[2].equals("--to=binary") && !args[2].equals("--to=text"))) {
+            System.err.println("usage: java MachineImage <input> <output> [--to=binary|text]");
+            System.exit(1);
+        }
+        try {
+            boolean inputBinary = isBinary(args[0]);
+            boolean toBinary = !inputBinary;
+            if (args.length > 2) {
+                toBinary = args[2].equals("--to=binary");
+            }
+            MachineImage image = read(args[0]);
+            if (toBinary) {
+                image.writeBinary(args[1]);
+            } else {
+                if (!image.symbols.isEmpty()) {
+                    System.err.println("warning: text format has no label table, dropping " + image.symbols.size()
+                            + " label(s)");
+                }
+                image.writeText(args[1]);
+            }
+        } catch (IOException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // ชื่อไฟล์ binary ที่คู่กับไฟล์ machine code แบบข้อความ (เปลี่ยนนามสกุลเป็น .bin เช่น src/machine_code.txt -> src/machine_code.bin)
+    public static String fileFor(String machineCodeFile) {
+        int dot = machineCodeFile.lastIndexOf('.');
+        int slash = Math.max(machineCodeFile.lastIndexOf('/'), machineCodeFile.lastIndexOf('\\'));
+        return (dot > slash ? machineCodeFile.substring(0, dot) : machineCodeFile) + ".bin";
+    }
+
+    // ไฟล์ขึ้นต้นด้วย MAGIC หรือไม่
+    public static boolean isBinary(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(4);
+            while (head.hasRemaining() && channel.read(head) >= 0) {
+                // อ่านจนครบ 4 byte หรือจบไฟล์
+            }
+            return head.position() == 4 && head.getInt(0) == MAGIC;
+        }
+    }
+
+    // อ่านไฟล์ได้ทั้งสองรูปแบบ
+    public static MachineImage read(String fileName) throws IOException {
+        if (isBinary(fileName)) {
+            try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+                return readBinary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), fileName);
+            }
+        }
+        return new MachineImage(readText(fileName), 0, Map.of());
+    }
+
+    // image ที่อยู่ใน memory แล้ว (เช่นที่ได้รับทาง socket) แยกรูปแบบจาก MAGIC เหมือน read
+    public static MachineImage parse(byte[] bytes, String name) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (bytes.length >= 4 && in.getInt(0) == MAGIC) {
+            return readBinary(in, name);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes),
+                StandardCharsets.US_ASCII))) {
+            return new MachineImage(readText(reader, name), 0, Map.of());
+        }
+    }
+
+    private static MachineImage readBinary(ByteBuffer in, String name) throws IOException {
+        int count = readHeader(in, name);
+        int entry = in.getInt(12);
+        int[] words = new int[count];
+        in.position(HEADER_SIZE);
+        in.asIntBuffer().get(words);
+        in.position(HEADER_SIZE + count * 4);
+        return new MachineImage(words, entry, readSymbols(in, name));
+    }
+
+    // โหลดไฟล์ลง state ใหม่: ไฟล์ binary จะ map แล้ว copy ทีละ page ลง memory โดยไม่ผ่าน int[] กลาง
+    public static BehavioralSimulator.stateStruct load(String fileName) throws IOException {
+        if (!isBinary(fileName)) {
+            return BehavioralSimulator.newState(readText(fileName));
+        }
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = readHeader(in, fileName);
+            BehavioralSimulator.stateStruct state = new BehavioralSimulator.stateStruct();
+            in.position(HEADER_SIZE);
+            state.mem.load(0, in.asIntBuffer(), count);
+            state.numMemory = count;
+            state.pc = in.getInt(12);
+            return state;
+        }
+    }
+
+    // ตรวจ header แล้วคืนจำนวน word
+    private static int readHeader(ByteBuffer in, String fileName) throws IOException {
+        if (in.limit() < HEADER_SIZE || in.getInt(0) != MAGIC) {
+            throw new IOException(fileName + ": not a binary machine code image");
+        }
+        short version = in.getShort(4);
+        if (version != VERSION) {
+            throw new IOException(fileName + ": unsupported image version " + version);
+        }
+        int count = in.getInt(8);
+        if (count < 0 || (long) HEADER_SIZE + count * 4L > in.limit()) {
+            throw new IOException(fileName + ": truncated image (" + count + " words)");
+        }
+        if (count > MAX_WORDS) {
+            throw new IOException(fileName + ": corrupt image (" + count + " words, memory holds " + MAX_WORDS + ")");
+        }
+        return count;
+    }
+
+    // symbol table มาจาก byte ที่เชื่อไม่ได้ (ไฟล์หรือ socket) จึงเช็คความยาวทุกช่องก่อนอ่าน
+    private static Map<String, Integer> readSymbols(ByteBuffer in, String fileName) throws IOException {
+        Map<String, Integer> symbols = new TreeMap<>();
+        if ((in.getShort(6) & FLAG_SYMBOLS) == 0) {
+            return symbols;
+        }
+        if (in.remaining() < 4) {
+            throw new IOException(fileName + ": corrupt image (truncated symbol table)");
+        }
+        int count = in.getInt();
+        if (count < 0) {
+            throw new IOException(fileName + ": corrupt image (" + count + " symbols)");
+        }
+        for (int i = 0; i < count; i++) {
+            if (in.remaining() < 2) {
+                throw new IOException(fileName + ": corrupt image (truncated symbol table)");
+            }
+            int length = in.getShort();
+            if (length < 0 || in.remaining() < length + 4) {
+                throw new IOException(fileName + ": corrupt image (truncated symbol table)");
+            }
+            byte[] name = new byte[length];
+            in.get(name);
+            symbols.put(new String(name, StandardCharsets.UTF_8), in.getInt());
+        }
+        return symbols;
+    }
+
+    // อ่านไฟล์ข้อความแบบเดิม (เลขฐานสิบบรรทัดละหนึ่ง word)
+    static int[] readText(String fileName) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            return readText(reader, fileName);
+        }
+    }
+
+    private static int[] readText(BufferedReader reader, String name) throws IOException {
+        int[] words = new int[64];
+        int n = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (n == MAX_WORDS) {
+                throw new IOException(name + ": corrupt image (more than " + MAX_WORDS + " words)");
+            }
+            if (n == words.length) {
+                words = Arrays.copyOf(words, n * 2);
+            }
+            try {
+                words[n++] = Integer.parseInt(line);
+            } catch (NumberFormatException e) {
+                throw new IOException(name + ":" + n + ": not a machine code word: " + line);
+            }
+        }
+        return Arrays.copyOf(words, n);
+    }
+
+    // รูปแบบข้อความเริ่มรันที่ pc 0 เสมอ จึงเขียน image ที่มี entry อื่นไม่ได้ (label ไม่มีผลกับการรันจึงทิ้งไป)
+    public void writeText(String fileName) throws IOException {
+        if (entry != 0) {
+            throw new IOException(fileName + ": text format can't store entry point " + entry);
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+            for (int word : words) {
+                writer.write(Integer.toString(word));
+                writer.newLine();
+            }
+        }
+    }
+
+    public void writeBinary(String fileName) throws IOException {
+        int size = HEADER_SIZE + words.length * 4;
+        if (!symbols.isEmpty()) {
+            size += 4;
+            for (String name : symbols.keySet()) {
+                int length = name.getBytes(StandardCharsets.UTF_8).length;
+                if (length > MAX_NAME_LENGTH) {
+                    throw new IOException(fileName + ": label name longer than " + MAX_NAME_LENGTH + " bytes");
+                }
+                size += 2 + length + 4;
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putShort(VERSION).putShort(symbols.isEmpty() ? 0 : FLAG_SYMBOLS);
+        out.putInt(words.length).putInt(entry);
+        out.asIntBuffer().put(words);
+        out.position(HEADER_SIZE + words.length * 4);
+        if (!symbols.isEmpty()) {
+            out.putInt(symbols.size());
+            for (Map.Entry<String, Integer> symbol : symbols.entrySet()) {
+                byte[] name = symbol.getKey().getBytes(StandardCharsets.UTF_8);
+                out.putShort((short) name.length).put(name).putInt(symbol.getValue());
+            }
+        }
+        out.flip();
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+}
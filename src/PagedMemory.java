@@ -0,0 +1,145 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+// memory ของเครื่องแบบแบ่งเป็น page ขนาด PAGE_SIZE word จองจริงเมื่อมีการเขียนค่าที่ไม่ใช่ 0 ครั้งแรก
+// (page ที่ยังไม่เคยเขียนอ่านได้ 0) โปรแกรมทั่วไปใช้ไม่กี่สิบ word จึงใช้ memory แค่ 1-2 page แทน 256KB
+//
+// copy() คืน memory ใหม่ที่ใช้ page ชุดเดียวกัน (copy-on-write): ฝั่งไหนเขียน page ที่แชร์อยู่จะ copy page นั้นก่อน
+// ใช้ทำ state หลายตัวจาก image เดียวกัน (BatchRunner, snapshot) โดยไม่ copy ข้อมูลทั้งหมด
+// ห้ามเรียก copy() พร้อมกับการเขียน memory ต้นฉบับจาก thread อื่น
+public class PagedMemory {
+    static final int PAGE_BITS = 8;
+    static final int PAGE_SIZE = 1 << PAGE_BITS; // 256 word ต่อ page
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    // อ่านหรือเขียน address ที่อยู่นอก memory (แทน ArrayIndexOutOfBoundsException ของ int[] แบบเดิม)
+    public static class MemoryFault extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int address;
+        final int size;
+
+        MemoryFault(int address, int size) {
+            super("memory fault: address " + address + " is outside 0.." + (size - 1));
+            this.address = address;
+            this.size = size;
+        }
+    }
+
+    private final int size;
+    private final int[][] pages;
+    private final boolean[] owned; // page นี้เป็นของ memory นี้คนเดียว เขียนได้เลยไม่ต้อง copy
+    private final boolean[] dirty; // page ที่ถูกเขียนตั้งแต่ clearDirty ครั้งล่าสุด (ใช้ทำ checkpoint เฉพาะส่วนที่เปลี่ยน)
+
+    public PagedMemory(int size) {
+        this.size = size;
+        int pageCount = (size + PAGE_MASK) >>> PAGE_BITS;
+        pages = new int[pageCount][];
+        owned = new boolean[pageCount];
+        dirty = new boolean[pageCount];
+    }
+
+    private PagedMemory(PagedMemory source) {
+        size = source.size;
+        pages = source.pages.clone();
+        owned = new boolean[pages.length];
+        dirty = source.dirty.clone();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int address) {
+        if (address < 0 || address >= size) {
+            throw new MemoryFault(address, size);
+        }
+        int[] page = pages[address >>> PAGE_BITS];
+        return page == null ? 0 : page[address & PAGE_MASK];
+    }
+
+    public void set(int address, int value) {
+        if (address < 0 || address >= size) {
+            throw new MemoryFault(address, size);
+        }
+        int index = address >>> PAGE_BITS;
+        int[] page = pages[index];
+        if (!owned[index]) {
+            if (page == null) {
+                if (value == 0) {
+                    return; // page ที่ยังไม่จองอ่านได้ 0 อยู่แล้ว
+                }
+                page = new int[PAGE_SIZE];
+            } else {
+                page = page.clone(); // page แชร์กับ memory อื่นอยู่
+            }
+            pages[index] = page;
+            owned[index] = true;
+        }
+        page[address & PAGE_MASK] = value;
+        dirty[index] = true;
+    }
+
+    // เขียน count word จาก src ลงที่ address เป็นต้นไป ทีละ page (ใช้โหลด image ที่ map จากไฟล์)
+    public void load(int address, IntBuffer src, int count) {
+        if (count < 0 || address < 0 || address > size - count) {
+            throw new MemoryFault(count < 0 || address < 0 ? address : address + count - 1, size);
+        }
+        while (count > 0) {
+            int index = address >>> PAGE_BITS;
+            int offset = address & PAGE_MASK;
+            int n = Math.min(count, PAGE_SIZE - offset);
+            int[] page = pages[index];
+            if (!owned[index]) {
+                page = page == null ? new int[PAGE_SIZE] : page.clone();
+                pages[index] = page;
+                owned[index] = true;
+            }
+            src.get(page, offset, n);
+            dirty[index] = true;
+            address += n;
+            count -= n;
+        }
+    }
+
+    // copy แบบ copy-on-write: หลังจากนี้ทั้งต้นฉบับและ copy ต้อง copy page ก่อนเขียน
+    public PagedMemory copy() {
+        Arrays.fill(owned, false);
+        return new PagedMemory(this);
+    }
+
+    public int pageCount() {
+        return pages.length;
+    }
+
+    // page ที่ index แบบอ่านอย่างเดียว (null ถ้ายังไม่เคยเขียน คืออ่านได้ 0 ทั้ง page)
+    public int[] page(int index) {
+        return pages[index];
+    }
+
+    // แทนที่ page ทั้ง page (ใช้ตอนโหลด checkpoint) data ต้องยาว PAGE_SIZE
+    public void setPage(int index, int[] data) {
+        pages[index] = data.clone();
+        owned[index] = true;
+        dirty[index] = true;
+    }
+
+    public boolean isDirty(int index) {
+        return dirty[index];
+    }
+
+    public void clearDirty() {
+        Arrays.fill(dirty, false);
+    }
+
+    // จำนวน page ที่จองไว้จริง (ไม่นับ page ที่ยังอ่านได้ 0)
+    public int allocatedPages() {
+        int count = 0;
+        for (int[] page : pages) {
+            if (page != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// จับเวลาการรันโปรแกรมบน pipeline 5 ขั้น IF/ID/EX/MEM/WB (หนึ่งคำสั่งต่อ cycle เมื่อไม่มี hazard)
+// ใช้ BehavioralSimulator.step ทำคำสั่งจริง ผลลัพธ์ของ register/memory จึงเหมือนโหมดปกติทุกอย่าง
+// ส่วนนี้นับแค่ว่าแต่ละคำสั่งต้องรอใน ID กี่ cycle:
+//   forwarding เปิด: ผลของ add/nand/jalr ส่งต่อให้คำสั่งถัดไปได้ทันที ผลของ lw ต้องรอ 1 cycle ถ้าคำสั่งถัดไปใช้ใน EX
+//                    (load-use) ส่วน sw ที่เก็บค่าจาก lw ตัวก่อนหน้าได้ค่าผ่าน MEM->MEM ไม่ต้องรอ
+//   forwarding ปิด:  ทุกคำสั่งต้องรอจนผู้เขียน register ถึง WB (เขียนครึ่งแรก อ่านครึ่งหลังของ cycle) ห่างกันน้อยกว่า 3 ต้องรอ
+//   beq:  เดาว่าไม่กระโดด ถ้ากระโดดจริงเสีย branchPenalty cycle (ค่าเริ่มต้น 2 = รู้ผลใน EX ทิ้ง 2 คำสั่งที่ fetch ผิดทาง)
+//   jalr: เปลี่ยน pc ทุกครั้ง เสีย jalrPenalty cycle (ค่าเริ่มต้น 2 เหมือนกัน)
+// จำนวน cycle ทั้งหมด = จำนวนคำสั่ง + 4 (เติม pipeline) + stall
+public class PipelineModel {
+    // สาเหตุของ stall
+    public static final int LOAD_USE = 0;
+    public static final int DATA = 1; // RAW hazard ที่ forwarding แก้ไม่ได้เพราะปิด forwarding
+    public static final int BRANCH = 2;
+    public static final int JALR = 3;
+    private static final String[] CAUSES = {"load-use", "data", "beq", "jalr"};
+
+    private final boolean forwarding;
+    private final int branchPenalty;
+    private final int jalrPenalty;
+
+    private final long[] ready = new long[8]; // cycle แรกที่คำสั่งที่ใช้ register นี้ใน EX เข้า ID ได้
+    private final long[] readyStore = new long[8]; // เหมือน ready แต่สำหรับค่าที่ sw ใช้ตอน MEM
+    private final boolean[] loaded = new boolean[8]; // register นี้เขียนล่าสุดโดย lw
+    private long id = 1; // cycle ที่คำสั่งล่าสุดอยู่ใน ID (คำสั่งแรก IF ที่ cycle 1)
+    private long instructions;
+    private final long[] stalls = new long[CAUSES.length];
+    // [สาเหตุ][pc] ของคำสั่งที่ต้องรอ (หรือ beq/jalr ที่ทำให้ทิ้งคำสั่ง) ขยายตาม pc ที่รันถึงจริง
+    private long[][] stallsAt = new long[CAUSES.length][0];
+
+    public PipelineModel(boolean forwarding, int branchPenalty, int jalrPenalty) {
+        this.forwarding = forwarding;
+        this.branchPenalty = branchPenalty;
+        this.jalrPenalty = jalrPenalty;
+    }
+
+    // รันเหมือน BehavioralSimulator.execute (หยุดที่ halt หรือเมื่อทำเกิน maxSteps คำสั่ง) พร้อมนับ cycle
+    public long run(BehavioralSimulator.stateStruct state, BehavioralSimulator.decodedStruct decoded, long maxSteps) {
+        long total = 0;
+        boolean running = true;
+        while (running) {
+            total++;
+            int pc = state.pc;
+            if (pc < 0 || pc >= decoded.size) {
+                decoded.grow(state, pc);
+            }
+            if (pc >= stallsAt[0].length) {
+                for (int cause = 0; cause < CAUSES.length; cause++) {
+                    stallsAt[cause] = Arrays.copyOf(stallsAt[cause], decoded.size);
+                }
+            }
+            int[] code = decoded.code;
+            int base = pc * BehavioralSimulator.decodedStruct.STRIDE;
+            int opcode = code[base + BehavioralSimulator.decodedStruct.OPCODE];
+            if (opcode < 0 || opcode > 7) {
+                opcode = 7; // opcode ที่ไม่รู้จักทำงานเหมือน noop (word ติดลบจาก .fill ให้ opcode ติดลบ)
+            }
+            int regA = code[base + BehavioralSimulator.decodedStruct.REGA];
+            int regB = code[base + BehavioralSimulator.decodedStruct.REGB];
+
+            // register ที่คำสั่งนี้อ่าน แล้วเลื่อน ID ไปจนกว่าค่าจะพร้อม
+            long next = id + 1;
+            long need = next;
+            int source = -1;
+            if (opcode <= 5) { // ทุกคำสั่งยกเว้น halt/noop อ่าน regA
+                source = regA;
+                need = ready[regA];
+            }
+            if ((opcode <= 1 || opcode == 4) && ready[regB] > need) { // add, nand, beq อ่าน regB ใน EX
+                source = regB;
+                need = ready[regB];
+            } else if (opcode == 3 && readyStore[regB] > need) { // sw ใช้ค่า regB ตอน MEM
+                source = regB;
+                need = readyStore[regB];
+            }
+            if (need > next) {
+                int cause = forwarding && loaded[source] ? LOAD_USE : DATA;
+                stalls[cause] += need - next;
+                stallsAt[cause][pc] += need - next;
+                next = need;
+            }
+            id = next;
+
+            // register ที่คำสั่งนี้เขียน: ผลของ add/nand/jalr มีหลัง EX ผลของ lw มีหลัง MEM
+            int dest = opcode <= 1 ? code[base + BehavioralSimulator.decodedStruct.OPERAND]
+                    : opcode == 2 || opcode == 5 ? regB : -1;
+            if (dest >= 0) {
+                ready[dest] = forwarding ? (opcode == 2 ? id + 2 : id + 1) : id + 3;
+                readyStore[dest] = forwarding ? id + 1 : id + 3;
+                loaded[dest] = opcode == 2;
+            }
+
+            running = BehavioralSimulator.step(state, decoded);
+            instructions++;
+
+            if (opcode == 4 && state.pc != pc + 1) { // beq ที่กระโดด
+                id += branchPenalty;
+                stalls[BRANCH] += branchPenalty;
+                stallsAt[BRANCH][pc] += branchPenalty;
+            } else if (opcode == 5) {
+                id += jalrPenalty;
+                stalls[JALR] += jalrPenalty;
+                stallsAt[JALR][pc] += jalrPenalty;
+            }
+
+            if (total > maxSteps) {
+                running = false;
+            }
+        }
+        return total;
+    }
+
+    // จำนวน cycle จนคำสั่งสุดท้ายที่รันผ่าน WB
+    public long cycles() {
+        return instructions == 0 ? 0 : id + 3;
+    }
+
+    public long instructions() {
+        return instructions;
+    }
+
+    public double cpi() {
+        return instructions == 0 ? 0 : (double) cycles() / instructions;
+    }
+
+    public long stalls(int cause) {
+        return stalls[cause];
+    }
+
+    public long stalls(int cause, int pc) {
+        return pc < stallsAt[cause].length ? stallsAt[cause][pc] : 0;
+    }
+
+    // สรุปผล: cycle, CPI, stall แยกตามสาเหตุ และ pc ที่เสีย cycle มากที่สุด (ไม่เกิน limit บรรทัด)
+    public void report(PrintStream out, int limit) {
+        out.printf("pipeline: 5-stage, forwarding %s, beq penalty %d, jalr penalty %d%n",
+                forwarding ? "on" : "off", branchPenalty, jalrPenalty);
+        out.printf("cycles: %d  instructions: %d  CPI: %.3f%n", cycles(), instructions, cpi());
+        long sum = 0;
+        StringBuilder line = new StringBuilder("stalls:");
+        for (int cause = 0; cause < CAUSES.length; cause++) {
+            line.append(' ').append(CAUSES[cause]).append(' ').append(stalls[cause]);
+            sum += stalls[cause];
+        }
+        out.println(line + " (total " + sum + ")");
+        if (sum == 0) {
+            return;
+        }
+
+        List<Integer> pcs = new ArrayList<>();
+        for (int pc = 0; pc < stallsAt[0].length; pc++) {
+            if (stallsAt(pc) > 0) {
+                pcs.add(pc);
+            }
+        }
+        pcs.sort((a, b) -> Long.compare(stallsAt(b), stallsAt(a)));
+        out.printf("%8s %10s %10s %10s %10s %10s%n", "pc", CAUSES[0], CAUSES[1], CAUSES[2], CAUSES[3], "total");
+        for (int i = 0; i < pcs.size() && i < limit; i++) {
+            int pc = pcs.get(i);
+            out.printf("%8d %10d %10d %10d %10d %10d%n", pc, stallsAt[LOAD_USE][pc], stallsAt[DATA][pc],
+                    stallsAt[BRANCH][pc], stallsAt[JALR][pc], stallsAt(pc));
+        }
+        if (pcs.size() > limit) {
+            out.println("... " + (pcs.size() - limit) + " more pc(s) with stalls");
+        }
+    }
+
+    private long stallsAt(int pc) {
+        long sum = 0;
+        for (long[] cause : stallsAt) {
+            sum += cause[pc];
+        }
+        return sum;
+    }
+}
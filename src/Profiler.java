@@ -0,0 +1,197 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// profile การรันโปรแกรม: จำนวนครั้งที่แต่ละ pc ทำงาน, beq แต่ละตัวกระโดด/ไม่กระโดดกี่ครั้ง, สัดส่วน opcode
+// และ loop ที่หาจาก beq ที่กระโดดย้อนหลัง (offset ติดลบ) พิมพ์ออกมาพร้อม label/บรรทัดใน source จาก LineMap
+//   FULL   - นับทุกคำสั่ง (ทำทีละคำสั่งผ่าน BehavioralSimulator.step)
+//   SAMPLE - รันด้วย execute ตามปกติเป็นช่วงยาวประมาณ interval คำสั่ง (สุ่มความยาวเพื่อไม่ให้ตรงจังหวะกับ loop)
+//            แล้วทำคำสั่งถัดไปหนึ่งคำสั่งแบบนับ ผลเป็นค่าประมาณ (จำนวน sample * interval) แต่ช้ากว่ารันปกติแค่นิดเดียว
+public class Profiler {
+    public static final int FULL = 0;
+    public static final int SAMPLE = 1;
+    private static final String[] OPCODES = {"add", "nand", "lw", "sw", "beq", "jalr", "halt", "noop"};
+
+    private final int mode;
+    private final int interval;
+    private int seed = 0x2545F491; // xorshift สำหรับสุ่มความยาวช่วงของ SAMPLE
+    private long[] counts = new long[0]; // [pc] จำนวนครั้งที่ทำงาน (FULL) หรือจำนวน sample (SAMPLE)
+    private long[] taken = new long[0]; // [pc] ของ beq (จำนวน sample ในโหมด SAMPLE เหมือน counts)
+    private long[] notTaken = new long[0];
+    private final long[] opcodes = new long[OPCODES.length];
+    private long total; // จำนวนคำสั่งที่รันทั้งหมด
+    private long recorded; // จำนวนคำสั่งที่นับเข้า counts (เท่ากับ total ในโหมด FULL)
+
+    // interval ใช้เฉพาะ SAMPLE (อย่างน้อย 2)
+    public Profiler(int mode, int interval) {
+        this.mode = mode;
+        this.interval = Math.max(interval, 2);
+    }
+
+    // รันเหมือน BehavioralSimulator.execute (หยุดที่ halt หรือเมื่อทำเกิน maxSteps คำสั่ง)
+    public long run(BehavioralSimulator.stateStruct state, BehavioralSimulator.decodedStruct decoded, long maxSteps) {
+        boolean running = true;
+        while (running) {
+            total++;
+            running = record(state, decoded);
+            if (total > maxSteps) {
+                break;
+            }
+            if (running && mode == SAMPLE) {
+                seed ^= seed << 13;
+                seed ^= seed >>> 17;
+                seed ^= seed << 5;
+                long n = Math.min(interval / 2 + Math.floorMod(seed, interval), maxSteps - total + 1);
+                if (n > 0) {
+                    total += BehavioralSimulator.execute(state, decoded, (int) n - 1);
+                    running = !state.halted && total <= maxSteps;
+                }
+            }
+        }
+        return total;
+    }
+
+    // ทำคำสั่งที่ state.pc หนึ่งคำสั่งแล้วนับ
+    private boolean record(BehavioralSimulator.stateStruct state, BehavioralSimulator.decodedStruct decoded) {
+        int pc = state.pc;
+        if (pc < 0 || pc >= decoded.size) {
+            decoded.grow(state, pc);
+        }
+        if (pc >= counts.length) {
+            int size = Math.max(pc + 1, decoded.size);
+            counts = Arrays.copyOf(counts, size);
+            taken = Arrays.copyOf(taken, size);
+            notTaken = Arrays.copyOf(notTaken, size);
+        }
+        int opcode = decoded.code[pc * BehavioralSimulator.decodedStruct.STRIDE + BehavioralSimulator.decodedStruct.OPCODE];
+        if (opcode < 0 || opcode > 7) {
+            opcode = 7; // opcode ที่ไม่รู้จักทำงานเหมือน noop
+        }
+        boolean running = BehavioralSimulator.step(state, decoded);
+        counts[pc]++;
+        opcodes[opcode]++;
+        recorded++;
+        if (opcode == 4) {
+            if (state.pc != pc + 1) {
+                taken[pc]++;
+            } else {
+                notTaken[pc]++;
+            }
+        }
+        return running;
+    }
+
+    // จำนวนครั้ง (ประมาณในโหมด SAMPLE) ที่คำสั่งที่ pc ทำงาน
+    public double count(int pc) {
+        if (pc >= counts.length || recorded == 0) {
+            return 0;
+        }
+        return scale(counts[pc]);
+    }
+
+    // จำนวนครั้งที่ beq ที่ pc กระโดด/ไม่กระโดด (ประมาณแบบเดียวกับ count ในโหมด SAMPLE)
+    public double taken(int pc) {
+        return pc < taken.length ? scale(taken[pc]) : 0;
+    }
+
+    public double notTaken(int pc) {
+        return pc < notTaken.length ? scale(notTaken[pc]) : 0;
+    }
+
+    // จำนวน sample -> จำนวนครั้งโดยประมาณ (FULL นับจริงทุกคำสั่งจึงคืนค่าเดิม)
+    private double scale(long samples) {
+        if (mode == FULL || recorded == 0) {
+            return samples;
+        }
+        return (double) samples * total / recorded;
+    }
+
+    // รายงาน: สัดส่วน opcode, pc ที่ทำงานมากที่สุด และ loop (ไม่เกิน limit รายการต่อหัวข้อ) map เป็น null ได้
+    public void report(PrintStream out, BehavioralSimulator.decodedStruct decoded, LineMap map, int limit) {
+        if (mode == FULL) {
+            out.printf("profile: full, %d instructions%n", total);
+        } else {
+            out.printf("profile: sampled, %d instructions, %d samples (1 per ~%d), counts are estimates%n",
+                    total, recorded, interval);
+        }
+        if (recorded == 0) {
+            return;
+        }
+        StringBuilder mix = new StringBuilder("opcode mix:");
+        for (int opcode = 0; opcode < OPCODES.length; opcode++) {
+            if (opcodes[opcode] > 0) {
+                mix.append(String.format(" %s %.1f%%", OPCODES[opcode], 100.0 * opcodes[opcode] / recorded));
+            }
+        }
+        out.println(mix);
+
+        List<Integer> pcs = new ArrayList<>();
+        for (int pc = 0; pc < counts.length; pc++) {
+            if (counts[pc] > 0) {
+                pcs.add(pc);
+            }
+        }
+        pcs.sort((a, b) -> Long.compare(counts[b], counts[a]));
+        out.println("hot addresses:");
+        out.printf("  %6s %14s %7s %19s  %s%n", "pc", "count", "%", "beq taken/not", "source");
+        for (int i = 0; i < pcs.size() && i < limit; i++) {
+            int pc = pcs.get(i);
+            String branch = taken[pc] + notTaken[pc] > 0
+                    ? String.format("%.0f/%.0f", taken(pc), notTaken(pc)) : "";
+            out.printf("  %6d %14.0f %6.2f%% %19s  %s%n", pc, count(pc), 100.0 * counts[pc] / recorded, branch,
+                    location(map, pc));
+        }
+        if (pcs.size() > limit) {
+            out.println("  ... " + (pcs.size() - limit) + " more pc(s)");
+        }
+
+        // loop = ช่วง target..pc ของ beq ที่กระโดดย้อนหลังและเคยทำงาน
+        List<int[]> loops = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        for (int pc = 0; pc < counts.length && pc < decoded.size; pc++) {
+            int base = pc * BehavioralSimulator.decodedStruct.STRIDE;
+            int offset = decoded.code[base + BehavioralSimulator.decodedStruct.OPERAND];
+            if (decoded.code[base + BehavioralSimulator.decodedStruct.OPCODE] == 4 && offset < 0 && counts[pc] > 0
+                    && pc + 1 + offset >= 0) {
+                long body = 0;
+                for (int i = pc + 1 + offset; i <= pc; i++) {
+                    body += counts[i];
+                }
+                loops.add(new int[]{pc + 1 + offset, pc});
+                weights.add((double) body);
+            }
+        }
+        if (loops.isEmpty()) {
+            return;
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < loops.size(); i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> Double.compare(weights.get(b), weights.get(a)));
+        out.println("loops (backward beq):");
+        for (int i = 0; i < order.size() && i < limit; i++) {
+            int[] loop = loops.get(order.get(i));
+            String iterations = mode == FULL ? taken[loop[1]] + " iterations, " : "";
+            out.printf("  %d..%d %s: %s%.2f%% of instructions%n", loop[0], loop[1], location(map, loop[0]),
+                    iterations, 100.0 * weights.get(order.get(i)) / recorded);
+        }
+        if (order.size() > limit) {
+            out.println("  ... " + (order.size() - limit) + " more loop(s)");
+        }
+    }
+
+    // "label+offset (line N: source)" ของ pc จาก map หรือ "" ถ้าไม่มี map
+    private static String location(LineMap map, int pc) {
+        if (map == null) {
+            return "";
+        }
+        String label = map.label(pc);
+        String source = map.source(pc);
+        if (label == null) {
+            return source == null ? "" : "(" + source + ")";
+        }
+        return source == null ? label : label + " (" + source + ")";
+    }
+}
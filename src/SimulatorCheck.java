@@ -0,0 +1,434 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// ตรวจกรณีขอบที่ทุกโหมดต้องให้ผลเหมือน interpreter (BehavioralSimulator.step/execute) ทุกบิต
+// รัน: java SimulatorCheck  พิมพ์ ok/FAIL ทีละกรณี และ exit 1 ถ้ามีกรณีที่ไม่ผ่าน
+public class SimulatorCheck {
+    // loop ที่อ่าน/เขียน memory ไล่ address ขึ้นทีละ 3 จนออกนอก memory (MemoryFault) หลังจาก block ร้อนจน compile แล้ว
+    private static final String FAULTING_LOOP = String.join("\n",
+            "        lw 0 1 first",
+            "        lw 0 2 stride",
+            "loop    add 1 2 1",
+            "        %s 1 3 0",
+            "        add 4 2 4",
+            "        beq 0 0 loop",
+            "first   .fill 100",
+            "stride  .fill 3",
+            "");
+
+    private static int failures;
+
+    public static void main(String[] args) {
+        jitMemoryFault("lw");
+        jitMemoryFault("sw");
+        corruptImages();
+        binaryTraceFault();
+        machineCopy();
+        machineImage();
+        daemonBadPayloads();
+        daemonOutputLimit();
+        daemonShutdown();
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    // MemoryFault ภายใน block ที่ compile แล้ว: pc, register, memory และจำนวนคำสั่งต้องเท่ากับ interpreter
+    private static void jitMemoryFault(String opcode) {
+        int[] image = StreamingAssembler.assemble(String.format(FAULTING_LOOP, opcode)).words;
+
+        BehavioralSimulator.stateStruct plain = BehavioralSimulator.newState(image);
+        BehavioralSimulator.decodedStruct plainDecoded = new BehavioralSimulator.decodedStruct(plain);
+        long steps = 0;
+        String expected;
+        try {
+            do {
+                steps++;
+            } while (BehavioralSimulator.step(plain, plainDecoded));
+            expected = "no fault";
+        } catch (PagedMemory.MemoryFault e) {
+            expected = e.getMessage() + ", " + describe(plain, image.length) + " steps " + steps;
+        }
+
+        BehavioralSimulator.stateStruct jit = BehavioralSimulator.newState(image);
+        BlockCompiler compiler = new BlockCompiler(jit, new BehavioralSimulator.decodedStruct(jit));
+        String actual;
+        try {
+            compiler.run(Integer.MAX_VALUE - 1);
+            actual = "no fault";
+        } catch (PagedMemory.MemoryFault e) {
+            actual = e.getMessage() + ", " + describe(jit, image.length) + " steps " + compiler.executed();
+        }
+        check("--jit MemoryFault in " + opcode, expected, actual);
+    }
+
+    // image เสียต้องได้ IOException (ข้อความ "can't open file" ของ main) ไม่ใช่ exception อื่นที่หลุดออกไป
+    private static void corruptImages() {
+        try {
+            Path file = Files.createTempFile("check", ".bin");
+            file.toFile().deleteOnExit();
+            new MachineImage(new int[]{1, 2, 3}, 0, Map.of("start", 0, "done", 2)).writeBinary(file.toString());
+            byte[] valid = Files.readAllBytes(file);
+            check("valid binary image", "ok", parse(valid));
+            for (int cut = 1; cut <= 13; cut += 4) {
+                check("symbol table truncated by " + cut + " bytes", "IOException",
+                        parse(Arrays.copyOf(valid, valid.length - cut)));
+            }
+
+            ByteBuffer oversized = ByteBuffer.allocate(16 + (MachineImage.MAX_WORDS + 1) * 4);
+            oversized.putInt(MachineImage.MAGIC).putShort(MachineImage.VERSION).putShort((short) 0)
+                    .putInt(MachineImage.MAX_WORDS + 1).putInt(0);
+            check("binary image over " + MachineImage.MAX_WORDS + " words (parse)", "IOException",
+                    parse(oversized.array()));
+            Files.write(file, oversized.array());
+            check("binary image over " + MachineImage.MAX_WORDS + " words (load)", "IOException", load(file));
+
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i <= MachineImage.MAX_WORDS; i++) {
+                text.append("0\n");
+            }
+            check("text image over " + MachineImage.MAX_WORDS + " words", "IOException",
+                    parse(text.toString().getBytes()));
+
+            String longName = "x".repeat(MachineImage.MAX_NAME_LENGTH + 1);
+            check("binary image with a label over " + MachineImage.MAX_NAME_LENGTH + " bytes", "IOException",
+                    write(new MachineImage(new int[]{0}, 0, Map.of(longName, 0)), file, true));
+            check("text image with entry point 1", "IOException",
+                    write(new MachineImage(new int[]{0, 0}, 1, Map.of()), file, false));
+            Files.delete(file);
+        } catch (IOException e) {
+            check("corrupt image setup", "ok", e.toString());
+        }
+    }
+
+    // trace แบบ binary ของการรันที่จบด้วย MemoryFault ต้องเล่นกลับได้เหมือน trace ข้อความ และ trace ที่ขาดท้ายต้องได้ IOException
+    private static void binaryTraceFault() {
+        int[] image = StreamingAssembler.assemble(String.format(FAULTING_LOOP, "lw")).words;
+        try {
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            String expected = traceRun(image, TraceWriter.FULL, text);
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            traceRun(image, TraceWriter.BINARY, binary);
+
+            ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+            String actual;
+            try (TraceWriter out = new TraceWriter(TraceWriter.FULL, Channels.newChannel(replayed))) {
+                TraceReader.replay(ByteBuffer.wrap(binary.toByteArray()), out);
+                actual = "no fault";
+            } catch (PagedMemory.MemoryFault e) {
+                actual = e.getMessage();
+            }
+            check("binary trace of a MemoryFault replays like the text trace",
+                    expected + ", " + text.size() + " bytes", actual + ", " + replayed.size() + " bytes");
+            check("binary trace of a MemoryFault replays to the same text", "same",
+                    Arrays.equals(text.toByteArray(), replayed.toByteArray()) ? "same" : "different");
+
+            byte[] truncated = Arrays.copyOf(binary.toByteArray(), binary.size() - 5);
+            try (TraceWriter out = new TraceWriter(TraceWriter.NONE, Channels.newChannel(new ByteArrayOutputStream()))) {
+                TraceReader.replay(ByteBuffer.wrap(truncated), out);
+                actual = "ok";
+            } catch (IOException e) {
+                actual = e.getMessage().startsWith("truncated trace: record at offset ") ? "IOException" : e.getMessage();
+            } catch (RuntimeException e) {
+                actual = e.toString();
+            }
+            check("truncated binary trace", "IOException", actual);
+        } catch (IOException e) {
+            check("binary trace setup", "ok", e.toString());
+        }
+    }
+
+    // รัน image ด้วย TraceWriter.execute ระดับ level ลง output คืนข้อความของ MemoryFault
+    private static String traceRun(int[] image, int level, ByteArrayOutputStream output) throws IOException {
+        BehavioralSimulator.stateStruct state = BehavioralSimulator.newState(image);
+        try (TraceWriter trace = new TraceWriter(level, Channels.newChannel(output))) {
+            trace.load(state);
+            try {
+                trace.execute(state, new BehavioralSimulator.decodedStruct(state), Integer.MAX_VALUE);
+                return "no fault";
+            } catch (PagedMemory.MemoryFault e) {
+                return e.getMessage();
+            }
+        }
+    }
+
+    // Machine.copy() แชร์ผลถอดรหัสกับต้นฉบับ: แก้โค้ดของฝั่งหนึ่งหลัง copy ต้องไม่กระทบอีกฝั่ง
+    private static void machineCopy() {
+        MachineImage image = StreamingAssembler.assemble(String.join("\n",
+                "        lw 0 1 five",
+                "        add 1 1 1",
+                "        halt",
+                "five    .fill 5",
+                ""));
+        int noop = 7 << 22;
+
+        Machine original = new Machine(image);
+        Machine copy = original.copy();
+        original.setMemory(1, noop);
+        copy.run(100);
+        original.run(100);
+        check("Machine.copy() then change original", "copy reg1 10, original reg1 5",
+                "copy reg1 " + copy.register(1) + ", original reg1 " + original.register(1));
+
+        original = new Machine(image);
+        copy = original.copy();
+        copy.setMemory(1, noop);
+        copy.run(100);
+        original.run(100);
+        check("Machine.copy() then change copy", "copy reg1 5, original reg1 10",
+                "copy reg1 " + copy.register(1) + ", original reg1 " + original.register(1));
+    }
+
+    // Machine จาก MachineImage ที่ entry ไม่ใช่ 0: แบบ jit ต้องเริ่มที่ entry เหมือนกัน และ image ต้องแก้จากภายนอกไม่ได้
+    private static void machineImage() {
+        int[] words = StreamingAssembler.assemble(String.join("\n",
+                "        lw 0 1 five",
+                "start   lw 0 2 five",
+                "loop    add 3 2 3",
+                "        add 1 1 1",
+                "        beq 1 4 done",
+                "        beq 0 0 loop",
+                "done    halt",
+                "five    .fill 5",
+                "")).words();
+        MachineImage image = new MachineImage(words, 1, Map.of("start", 1));
+        words[0] = 0;
+        image.words()[1] = 0;
+        String expected = describe(new Machine(image, false));
+        check("Machine(image, jit) starts at the entry point", expected, describe(new Machine(image, true)));
+        check("MachineImage is read-only", "word 0 " + (2 << 22 | 1 << 16 | 7) + ", symbols unmodifiable",
+                "word 0 " + image.words()[0] + ", symbols " + unmodifiable(image.symbols()));
+    }
+
+    private static String describe(Machine machine) {
+        long steps = machine.run(1_000_000);
+        return "steps " + steps + " pc " + machine.pc() + " reg " + Arrays.toString(machine.registers());
+    }
+
+    private static String unmodifiable(Map<String, Integer> symbols) {
+        try {
+            symbols.put("other", 0);
+            return "modifiable";
+        } catch (UnsupportedOperationException e) {
+            return "unmodifiable";
+        }
+    }
+
+    // payload เสียต้องได้คำตอบ error และไม่ทำให้ request ที่ส่งตามมาใน connection เดียวกันค้าง
+    private static void daemonBadPayloads() {
+        try {
+            Path socket = Files.createTempDirectory("check").resolve("daemon.sock");
+            SimulatorDaemon daemon = startDaemon(socket, 1L << 30);
+
+            Path file = Files.createTempFile("check", ".bin");
+            new MachineImage(new int[]{25165824}, 0, Map.of("start", 0)).writeBinary(file.toString());
+            byte[] truncated = Files.readAllBytes(file);
+            truncated = Arrays.copyOf(truncated, truncated.length - 3);
+            Files.delete(file);
+            StringBuilder oversized = new StringBuilder();
+            for (int i = 0; i <= MachineImage.MAX_WORDS; i++) {
+                oversized.append("        .fill 0\n");
+            }
+
+            String statuses;
+            try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                channel.connect(SimulatorDaemon.address(socket.toString(), 0));
+                OutputStream out = SimulatorDaemon.output(channel);
+                InputStream in = SimulatorDaemon.input(channel);
+                SimulatorDaemon.Message run = new SimulatorDaemon.Message("RUN");
+                run.payload = truncated;
+                SimulatorDaemon.write(out, run);
+                SimulatorDaemon.Message asm = new SimulatorDaemon.Message("RUN");
+                asm.options.put("format", "asm");
+                asm.payload = oversized.toString().getBytes();
+                SimulatorDaemon.write(out, asm);
+                SimulatorDaemon.write(out, new SimulatorDaemon.Message("PING"));
+                statuses = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        StringBuilder result = new StringBuilder();
+                        for (int i = 0; i < 3; i++) {
+                            result.append(i == 0 ? "" : " ").append(SimulatorDaemon.read(in).command);
+                        }
+                        return result.toString();
+                    } catch (IOException e) {
+                        return e.toString();
+                    }
+                }).get(10, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                statuses = "no response within 10 s";
+            } finally {
+                daemon.shutdown();
+            }
+            check("daemon: truncated image, image over memory, then PING",
+                    SimulatorDaemon.BAD_REQUEST + " " + SimulatorDaemon.MEMORY_FAULT + " " + SimulatorDaemon.OK, statuses);
+        } catch (Exception e) {
+            check("daemon setup", "ok", e.toString());
+        }
+    }
+
+    // trace ของ loop ไม่รู้จบต้องถูกส่งออกทีละ frame และหยุดที่ limit ของ daemon (ไม่สะสมไว้ใน heap จน OutOfMemoryError)
+    private static void daemonOutputLimit() {
+        long limit = 4L << 20;
+        try {
+            Path socket = Files.createTempDirectory("check").resolve("daemon.sock");
+            SimulatorDaemon daemon = startDaemon(socket, limit);
+            String result;
+            try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                channel.connect(SimulatorDaemon.address(socket.toString(), 0));
+                OutputStream out = SimulatorDaemon.output(channel);
+                InputStream in = SimulatorDaemon.input(channel);
+                SimulatorDaemon.Message run = new SimulatorDaemon.Message("RUN");
+                run.options.put("format", "asm");
+                run.options.put("trace", "full");
+                run.options.put("max-steps", "1000000000");
+                run.payload = "loop    beq 0 0 loop\n".getBytes();
+                SimulatorDaemon.write(out, run);
+                SimulatorDaemon.write(out, new SimulatorDaemon.Message("PING"));
+                result = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        int frames = 0;
+                        long bytes = 0;
+                        SimulatorDaemon.Message response;
+                        while ((response = SimulatorDaemon.read(in)).command.equals(SimulatorDaemon.OUTPUT)) {
+                            frames++;
+                            bytes += response.payload.length;
+                        }
+                        return (frames > 1 ? "several frames" : frames + " frame(s)")
+                                + (bytes <= limit ? ", within limit " : ", " + bytes + " bytes ")
+                                + response.command + " " + SimulatorDaemon.read(in).command;
+                    } catch (IOException e) {
+                        return e.toString();
+                    }
+                }).get(60, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                result = "no response within 60 s";
+            } finally {
+                daemon.shutdown();
+            }
+            check("daemon: endless full trace, then PING",
+                    "several frames, within limit " + SimulatorDaemon.OUTPUT_LIMIT + " " + SimulatorDaemon.OK, result);
+        } catch (Exception e) {
+            check("daemon setup", "ok", e.toString());
+        }
+    }
+
+    // SHUTDOWN จาก connection หนึ่ง: connection อื่นที่ยังเปิดอยู่ต้องได้คำตอบ SHUTTING_DOWN ไม่ใช่ถูกตัดเงียบๆ
+    private static void daemonShutdown() {
+        try {
+            Path socket = Files.createTempDirectory("check").resolve("daemon.sock");
+            SimulatorDaemon daemon = startDaemon(socket, 1L << 30);
+            String status;
+            try (SocketChannel other = SocketChannel.open(StandardProtocolFamily.UNIX);
+                 SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                other.connect(SimulatorDaemon.address(socket.toString(), 0));
+                OutputStream otherOut = SimulatorDaemon.output(other);
+                InputStream otherIn = SimulatorDaemon.input(other);
+                SimulatorDaemon.write(otherOut, new SimulatorDaemon.Message("PING"));
+                status = SimulatorDaemon.read(otherIn).command;
+
+                channel.connect(SimulatorDaemon.address(socket.toString(), 0));
+                SimulatorDaemon.write(SimulatorDaemon.output(channel), new SimulatorDaemon.Message("SHUTDOWN"));
+                status += " " + SimulatorDaemon.read(SimulatorDaemon.input(channel)).command;
+
+                // worker pool ปิดหลังจาก serve() เห็นว่า server ถูกปิดแล้ว จึงลองซ้ำจนกว่าจะได้คำตอบอื่นที่ไม่ใช่ OK
+                String last = SimulatorDaemon.OK;
+                for (int i = 0; i < 200 && last.equals(SimulatorDaemon.OK); i++) {
+                    Thread.sleep(10);
+                    SimulatorDaemon.write(otherOut, new SimulatorDaemon.Message("PING"));
+                    SimulatorDaemon.Message response = SimulatorDaemon.read(otherIn);
+                    last = response == null ? "connection closed" : response.command;
+                }
+                status += " " + last;
+            } finally {
+                daemon.shutdown();
+            }
+            check("daemon: PING, SHUTDOWN from another connection, PING",
+                    SimulatorDaemon.OK + " " + SimulatorDaemon.OK + " " + SimulatorDaemon.SHUTTING_DOWN, status);
+        } catch (Exception e) {
+            check("daemon setup", "ok", e.toString());
+        }
+    }
+
+    private static SimulatorDaemon startDaemon(Path socket, long maxOutput) throws IOException {
+        SimulatorDaemon daemon = new SimulatorDaemon(socket.toString(), 0, 2, maxOutput);
+        CompletableFuture.runAsync(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException e) {
+                // ถูกปิดตอนจบ check
+            }
+        });
+        return daemon;
+    }
+
+    private static String parse(byte[] bytes) {
+        try {
+            BehavioralSimulator.newState(MachineImage.parse(bytes, "image").words);
+            return "ok";
+        } catch (IOException e) {
+            return "IOException";
+        } catch (RuntimeException e) {
+            return e.toString();
+        }
+    }
+
+    private static String write(MachineImage image, Path file, boolean binary) {
+        try {
+            if (binary) {
+                image.writeBinary(file.toString());
+            } else {
+                image.writeText(file.toString());
+            }
+            return "ok";
+        } catch (IOException e) {
+            return "IOException";
+        } catch (RuntimeException e) {
+            return e.toString();
+        }
+    }
+
+    private static String load(Path file) {
+        try {
+            MachineImage.load(file.toString());
+            return "ok";
+        } catch (IOException e) {
+            return "IOException";
+        } catch (RuntimeException e) {
+            return e.toString();
+        }
+    }
+
+    private static String describe(BehavioralSimulator.stateStruct state, int words) {
+        int[] memory = new int[words + 16];
+        for (int i = 0; i < memory.length; i++) {
+            memory[i] = state.mem.get(i);
+        }
+        return "pc " + state.pc + " reg " + Arrays.toString(state.reg) + " mem " + Arrays.hashCode(memory);
+    }
+
+    private static void check(String name, String expected, String actual) {
+        if (expected.equals(actual)) {
+            System.out.println("ok    " + name);
+        } else {
+            failures++;
+            System.out.println("FAIL  " + name);
+            System.out.println("        expected: " + expected);
+            System.out.println("        actual:   " + actual);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// client ของ SimulatorDaemon ใช้แทน "java Assembler" กับ "java BehavioralSimulator" ใน script
+// รัน: java SimulatorClient [--port=N | --socket=PATH] assemble [input] [output]
+//      java SimulatorClient [--port=N | --socket=PATH] run [--asm] [--trace=LEVEL] [--max-steps=N] [--timeout=MS] [--jit] [file ...]
+//      java SimulatorClient [--port=N | --socket=PATH] ping|shutdown
+// assemble มีค่าเริ่มต้นเหมือน Assembler (src/assembly.txt -> src/machine_code.txt) และ run อ่าน src/machine_code.txt
+// run หลายไฟล์จะส่งทุกงานไปใน connection เดียวกันก่อนแล้วค่อยอ่านผล ผลพิมพ์ตามลำดับไฟล์
+// exit code เป็น 1 ถ้ามีงานไหนผิดพลาด (assembly ผิด, memory fault, timeout, output เกิน limit ของ daemon)
+public class SimulatorClient {
+    public static void main(String[] args) {
+        String socket = null;
+        int port = SimulatorDaemon.DEFAULT_PORT;
+        String command = null;
+        List<String> options = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (command == null && arg.startsWith("--socket=")) {
+                socket = arg.substring("--socket=".length());
+            } else if (command == null && arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (command == null) {
+                command = arg;
+            } else if (arg.startsWith("--")) {
+                options.add(arg);
+            } else {
+                files.add(arg);
+            }
+        }
+        if (command == null) {
+            usage();
+        }
+
+        try (SocketChannel channel = SocketChannel.open(socket != null ? StandardProtocolFamily.UNIX
+                : StandardProtocolFamily.INET)) {
+            channel.connect(SimulatorDaemon.address(socket, port));
+            InputStream in = new BufferedInputStream(SimulatorDaemon.input(channel));
+            OutputStream out = new BufferedOutputStream(SimulatorDaemon.output(channel));
+            switch (command) {
+                case "assemble":
+                    System.exit(assemble(in, out, files));
+                    break;
+                case "run":
+                    System.exit(run(in, out, options, files));
+                    break;
+                case "ping":
+                case "shutdown":
+                    SimulatorDaemon.write(out, new SimulatorDaemon.Message(command.toUpperCase()));
+                    SimulatorDaemon.Message response = SimulatorDaemon.read(in);
+                    System.out.println(response == null ? "no response" : response.command);
+                    break;
+                default:
+                    usage();
+            }
+        } catch (IOException e) {
+            System.err.println("error: can't reach daemon: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: java SimulatorClient [--port=N | --socket=PATH] assemble [input] [output]");
+        System.err.println("       java SimulatorClient [--port=N | --socket=PATH] run [--asm] [--trace=LEVEL] [--max-steps=N] [--timeout=MS] [--jit] [file ...]");
+        System.err.println("       java SimulatorClient [--port=N | --socket=PATH] ping|shutdown");
+        System.exit(1);
+    }
+
+    private static int assemble(InputStream in, OutputStream out, List<String> files) throws IOException {
+        String input = files.size() > 0 ? files.get(0) : "src/assembly.txt";
+        String output = files.size() > 1 ? files.get(1) : "src/machine_code.txt";
+        SimulatorDaemon.Message request = new SimulatorDaemon.Message("ASSEMBLE");
+        request.payload = Files.readAllBytes(Path.of(input));
+        SimulatorDaemon.write(out, request);
+
+        SimulatorDaemon.Message response = SimulatorDaemon.read(in);
+        if (response == null) {
+            throw new IOException("daemon closed the connection");
+        }
+        if (!response.command.equals(SimulatorDaemon.OK)) {
+            System.err.println("Error: " + response.message);
+            return 1;
+        }
+        Files.write(Path.of(output), response.payload);
+        return 0;
+    }
+
+    private static int run(InputStream in, OutputStream out, List<String> options, List<String> files) throws IOException {
+        if (files.isEmpty()) {
+            files.add("src/machine_code.txt");
+        }
+        // ส่งทุกงานก่อน daemon จะเริ่มทำงานแรกไปพร้อมกับที่รับงานถัดไป
+        for (String file : files) {
+            SimulatorDaemon.Message request = new SimulatorDaemon.Message("RUN");
+            for (String option : options) {
+                if (option.equals("--asm")) {
+                    request.options.put("format", "asm");
+                } else if (option.equals("--jit")) {
+                    request.options.put("jit", "true");
+                } else if (option.startsWith("--trace=")) {
+                    request.options.put("trace", option.substring("--trace=".length()));
+                } else if (option.startsWith("--max-steps=")) {
+                    request.options.put("max-steps", option.substring("--max-steps=".length()));
+                } else if (option.startsWith("--timeout=")) {
+                    request.options.put("timeout-ms", option.substring("--timeout=".length()));
+                } else {
+                    System.err.println("error: unknown option " + option);
+                    return 1;
+                }
+            }
+            request.payload = Files.readAllBytes(Path.of(file));
+            SimulatorDaemon.write(out, request);
+        }
+
+        int exitCode = 0;
+        for (String file : files) {
+            // output มาทีละ frame ระหว่างที่งานรัน แล้วจึงตามด้วย status ของงาน
+            SimulatorDaemon.Message response;
+            while ((response = SimulatorDaemon.read(in)) != null && response.command.equals(SimulatorDaemon.OUTPUT)) {
+                System.out.write(response.payload);
+            }
+            System.out.flush();
+            if (response == null) {
+                throw new IOException("daemon closed the connection");
+            }
+            if (!response.command.equals(SimulatorDaemon.OK) && !response.command.equals(SimulatorDaemon.LIMIT)) {
+                System.err.println("error: " + (files.size() > 1 ? file + ": " : "") + response.message);
+                exitCode = 1;
+            }
+        }
+        return exitCode;
+    }
+}
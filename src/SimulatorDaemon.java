@@ -0,0 +1,473 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+// daemon ที่รันค้างไว้รับงาน assemble/run ผ่าน socket บนเครื่องเดียวกัน (loopback TCP หรือ Unix domain socket)
+// เพื่อไม่ต้องเสียเวลาเปิด JVM ใหม่ทุกครั้ง ใช้คู่กับ SimulatorClient
+// รัน: java SimulatorDaemon [--port=N | --socket=PATH] [--workers=N] [--max-output=BYTES]
+//
+// protocol: แต่ละ request คือบรรทัด header ตามด้วย payload ขนาดตามที่ระบุ (ส่งหลาย request ต่อกันใน connection เดียวได้)
+//   request:  <PING|ASSEMBLE|RUN|SHUTDOWN> <จำนวน byte ของ payload> [key=value ...]\n<payload>
+//             RUN: format=asm|mc (payload เป็น assembly หรือ machine code แบบข้อความ/binary, ค่าเริ่มต้น mc)
+//                  trace=none|final|delta|full|binary, max-steps=N, timeout-ms=N, jit
+//   response: <status> <จำนวน byte ของ payload> steps=N pc=N [message=<ข้อความถึงท้ายบรรทัด>]\n<payload>
+//             status: OK, LIMIT (ครบ max-steps), TIMEOUT, ASSEMBLY_ERROR, MEMORY_FAULT,
+//                     OUTPUT_LIMIT (output ของงานเกิน --max-output), BAD_REQUEST, SHUTTING_DOWN (daemon กำลังปิด)
+//             payload ของ ASSEMBLE คือ machine_code.txt
+//             RUN ส่ง output (แบบเดียวกับ BehavioralSimulator) ทยอยเป็น frame "OUTPUT <จำนวน byte>\n<payload>"
+//             ระหว่างที่รัน (กี่ frame ก็ได้) แล้วปิดด้วยคำตอบ status ที่ไม่มี payload
+// งานของทุก connection ทำบน worker pool ร่วมกัน และตอบกลับทันทีที่เสร็จตามลำดับของ request ใน connection นั้น
+public class SimulatorDaemon {
+    static final int DEFAULT_PORT = 7878;
+    private static final long DEFAULT_TIMEOUT_MS = 10_000;
+    private static final int MAX_HEADER = 4096;
+    private static final int MAX_PAYLOAD = 64 << 20;
+    private static final long DEFAULT_MAX_OUTPUT = 256L << 20;
+
+    static final String OK = "OK";
+    static final String LIMIT = "LIMIT";
+    static final String TIMEOUT = "TIMEOUT";
+    static final String ASSEMBLY_ERROR = "ASSEMBLY_ERROR";
+    static final String MEMORY_FAULT = "MEMORY_FAULT";
+    static final String OUTPUT_LIMIT = "OUTPUT_LIMIT";
+    static final String BAD_REQUEST = "BAD_REQUEST";
+    static final String SHUTTING_DOWN = "SHUTTING_DOWN";
+    static final String OUTPUT = "OUTPUT"; // frame ของ output ระหว่างรัน ไม่ใช่คำตอบสุดท้าย
+
+    // request หรือ response หนึ่งชุด: คำแรกของ header, ค่า key=value และ payload
+    static class Message {
+        String command; // ชื่อคำสั่งของ request หรือ status ของ response
+        Map<String, String> options = new HashMap<>();
+        byte[] payload = new byte[0];
+        String message; // ข้อความ error ของ response
+
+        Message(String command) {
+            this.command = command;
+        }
+    }
+
+    private final ServerSocketChannel server;
+    private final Path socketPath; // null ถ้าใช้ TCP
+    private final ExecutorService workers;
+    private final long maxOutput; // จำนวน byte ของ output ที่งานหนึ่งส่งได้
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SimulatorDaemon(String socket, int port, int workerCount) throws IOException {
+        this(socket, port, workerCount, DEFAULT_MAX_OUTPUT);
+    }
+
+    public SimulatorDaemon(String socket, int port, int workerCount, long maxOutput) throws IOException {
+        if (socket != null) {
+            socketPath = Path.of(socket);
+            Files.deleteIfExists(socketPath); // socket ค้างจากรอบก่อน
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            socketPath = null;
+            server = ServerSocketChannel.open();
+        }
+        server.bind(address(socket, port));
+        workers = Executors.newFixedThreadPool(workerCount);
+        this.maxOutput = maxOutput;
+    }
+
+    public static void main(String[] args) {
+        String socket = null;
+        int port = DEFAULT_PORT;
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        long maxOutput = DEFAULT_MAX_OUTPUT;
+        for (String arg : args) {
+            if (arg.startsWith("--socket=")) {
+                socket = arg.substring("--socket=".length());
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--workers=")) {
+                workerCount = Integer.parseInt(arg.substring("--workers=".length()));
+            } else if (arg.startsWith("--max-output=")) {
+                maxOutput = Long.parseLong(arg.substring("--max-output=".length()));
+            } else {
+                System.err.println("usage: java SimulatorDaemon [--port=N | --socket=PATH] [--workers=N] [--max-output=BYTES]");
+                System.exit(1);
+            }
+        }
+        try {
+            SimulatorDaemon daemon = new SimulatorDaemon(socket, port, workerCount, maxOutput);
+            System.out.println("listening on " + (socket != null ? "unix:" + socket : "127.0.0.1:" + port)
+                    + " with " + workerCount + " workers");
+            daemon.serve();
+        } catch (IOException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // address ของ daemon: Unix domain socket ถ้าระบุ path ไม่เช่นนั้นเป็น loopback เท่านั้น (ไม่เปิดรับจากเครื่องอื่น)
+    static SocketAddress address(String socket, int port) {
+        return socket != null ? UnixDomainSocketAddress.of(socket)
+                : new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    // รับ connection จนกว่าจะได้ SHUTDOWN
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                connections.execute(() -> serve(channel));
+            }
+        } catch (AsynchronousCloseException e) {
+            // ถูกปิดโดย SHUTDOWN
+        } finally {
+            workers.shutdown();
+            if (socketPath != null) {
+                Files.deleteIfExists(socketPath);
+            }
+        }
+    }
+
+    public void shutdown() throws IOException {
+        server.close();
+    }
+
+    // อ่าน request ทีละตัวแล้วส่งเข้า worker pool ทันที (ไม่รอตัวก่อนเสร็จ) ส่วนคำตอบเขียนตามลำดับ request
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            InputStream in = new BufferedInputStream(input(channel));
+            OutputStream out = new BufferedOutputStream(output(channel));
+            CompletableFuture<Void> written = CompletableFuture.completedFuture(null);
+            while (true) {
+                Message request;
+                try {
+                    request = read(in);
+                } catch (IOException e) {
+                    Message response = new Message(BAD_REQUEST); // header เสีย แยก request ต่อไปไม่ได้ จึงปิด connection
+                    response.message = e.getMessage();
+                    written = written.thenRun(() -> write(out, response));
+                    break;
+                }
+                if (request == null) {
+                    break;
+                }
+                if (request.command.equals("SHUTDOWN")) {
+                    // คำตอบก่อนหน้าที่เขียนไม่สำเร็จต้องไม่ขวางการปิด daemon
+                    Message response = new Message(OK);
+                    try {
+                        written.join();
+                    } catch (CompletionException e) {
+                        response = failed(e);
+                    }
+                    try {
+                        write(out, response);
+                    } finally {
+                        shutdown();
+                    }
+                    return;
+                }
+                // handle ไม่โยน exception อยู่แล้ว แต่ถ้างานไหนพังจริงก็ยังต้องมีคำตอบ ไม่เช่นนั้นทุก request ที่ตามมาจะค้าง
+                OutputFrames output = new OutputFrames(out, written, maxOutput);
+                CompletableFuture<Message> job;
+                try {
+                    job = CompletableFuture.supplyAsync(() -> handle(request, output), workers)
+                            .exceptionally(SimulatorDaemon::failed);
+                } catch (RejectedExecutionException e) { // connection อื่นสั่ง SHUTDOWN ไปแล้ว
+                    Message response = new Message(SHUTTING_DOWN);
+                    response.message = "daemon is shutting down";
+                    job = CompletableFuture.completedFuture(response);
+                }
+                written = written.thenCombine(job, (previous, response) -> {
+                    write(out, response);
+                    return null;
+                });
+            }
+            written.join();
+        } catch (IOException | RuntimeException e) {
+            // client ปิด connection ไปก่อน ไม่มีที่ให้รายงาน
+        }
+    }
+
+    // ทำหนึ่ง request (บน worker thread) ไม่โยน exception: error ทุกแบบกลายเป็น status ของคำตอบ
+    // output ของ RUN ส่งออกทาง output ระหว่างรัน ส่วนคำตอบที่คืนเป็น status ปิดท้าย
+    static Message handle(Message request, WritableByteChannel output) {
+        Message response = new Message(OK);
+        try {
+            switch (request.command) {
+                case "PING":
+                    break;
+                case "ASSEMBLE": {
+                    ByteArrayOutputStream text = new ByteArrayOutputStream();
+                    try (StreamingAssembler.TextSink sink = new StreamingAssembler.TextSink(Channels.newChannel(text))) {
+                        new StreamingAssembler(sink).assemble(Channels.newChannel(new ByteArrayInputStream(request.payload)));
+                    }
+                    response.payload = text.toByteArray();
+                    break;
+                }
+                case "RUN":
+                    run(request, response, output);
+                    break;
+                default:
+                    response.command = BAD_REQUEST;
+                    response.message = "unknown command " + request.command;
+            }
+        } catch (StreamingAssembler.AssemblyError e) {
+            response.command = ASSEMBLY_ERROR;
+            response.message = e.toString();
+        } catch (PagedMemory.MemoryFault e) { // เช่น image ใหญ่เกิน memory
+            response.command = MEMORY_FAULT;
+            response.message = e.getMessage();
+        } catch (IOException | IllegalArgumentException e) {
+            response.command = BAD_REQUEST;
+            response.message = e.getMessage();
+        } catch (RuntimeException e) { // payload เสียแบบที่ไม่ได้คาดไว้
+            return failed(e);
+        }
+        return response;
+    }
+
+    // คำตอบของงานที่จบด้วย exception ที่ไม่รู้จัก
+    private static Message failed(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        Message response = new Message(BAD_REQUEST);
+        response.message = e.toString();
+        return response;
+    }
+
+    private static void run(Message request, Message response, WritableByteChannel output) throws IOException {
+        MachineImage image = request.options.getOrDefault("format", "mc").equals("asm")
+                ? StreamingAssembler.assemble(new ByteArrayInputStream(request.payload))
+                : MachineImage.parse(request.payload, "payload");
+        long maxSteps = Math.min(Long.parseLong(request.options.getOrDefault("max-steps",
+                Integer.toString(BehavioralSimulator.MAXLINELENGTH))), Long.MAX_VALUE - 1);
+        long timeout = Long.parseLong(request.options.getOrDefault("timeout-ms", Long.toString(DEFAULT_TIMEOUT_MS)));
+        int level = TraceWriter.parseLevel(request.options.getOrDefault("trace", "full"));
+        boolean jit = request.options.containsKey("jit");
+        long deadline = System.nanoTime() + timeout * 1_000_000;
+
+        BehavioralSimulator.stateStruct state = BehavioralSimulator.newState(image.words);
+        state.pc = image.entry;
+        BehavioralSimulator.decodedStruct decoded = new BehavioralSimulator.decodedStruct(state);
+        TraceWriter trace = new TraceWriter(level, output);
+        long total = 0;
+        try {
+            try {
+                trace.load(state);
+                if (trace.needsSteps()) {
+                    trace.setDeadline(deadline);
+                    total = trace.execute(state, decoded, maxSteps);
+                } else {
+                    // ลูปของ simulator หยุดกลางทางไม่ได้ จึงรันทีละช่วงแล้วเช็คเวลาระหว่างช่วง
+                    total = BehavioralSimulator.run(state, decoded, 0, maxSteps, jit,
+                            (current, executed) -> System.nanoTime() - deadline <= 0);
+                }
+                if (!state.halted && total <= maxSteps) {
+                    response.command = TIMEOUT;
+                    response.message = "timed out after " + timeout + " ms";
+                } else {
+                    trace.finish(state, total, total > maxSteps);
+                    response.command = total > maxSteps ? LIMIT : OK;
+                }
+            } catch (PagedMemory.MemoryFault e) {
+                response.command = MEMORY_FAULT;
+                response.message = e.getMessage() + " (pc " + state.pc + ")";
+            }
+            trace.flush();
+        } catch (OutputLimitExceeded e) { // งานหยุดทันทีที่ output จะเกิน limit
+            response.command = OUTPUT_LIMIT;
+            response.message = e.getMessage();
+        }
+        response.options.put("steps", Long.toString(total));
+        response.options.put("pc", Integer.toString(state.pc));
+    }
+
+    // อ่าน request/response หนึ่งชุด คืน null ถ้า connection จบพอดีก่อน header
+    static Message read(InputStream in) throws IOException {
+        StringBuilder header = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                if (header.length() == 0) {
+                    return null;
+                }
+                throw new EOFException("connection closed inside a header");
+            }
+            if (header.length() == MAX_HEADER) {
+                throw new IOException("header longer than " + MAX_HEADER + " bytes");
+            }
+            header.append((char) b);
+        }
+
+        String line = header.toString();
+        int messageIndex = line.indexOf(" message=");
+        String messageText = null;
+        if (messageIndex >= 0) {
+            messageText = line.substring(messageIndex + " message=".length());
+            line = line.substring(0, messageIndex);
+        }
+        String[] parts = line.trim().split(" +");
+        if (parts.length < 2) {
+            throw new IOException("bad header: " + header);
+        }
+        Message message = new Message(parts[0]);
+        message.message = messageText;
+        int length;
+        try {
+            length = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("bad payload length: " + parts[1]);
+        }
+        if (length < 0 || length > MAX_PAYLOAD) {
+            throw new IOException("payload length out of range: " + length);
+        }
+        for (int i = 2; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            if (eq < 0) {
+                message.options.put(parts[i], "true"); // flag เช่น jit
+            } else {
+                message.options.put(parts[i].substring(0, eq), parts[i].substring(eq + 1));
+            }
+        }
+        message.payload = in.readNBytes(length);
+        if (message.payload.length != length) {
+            throw new EOFException("connection closed inside a payload");
+        }
+        return message;
+    }
+
+    // channel ที่ TraceWriter ของงานหนึ่งเขียนลง: ทุกครั้งที่ flush ส่งเป็น frame OUTPUT ทันที (ไม่เก็บ output ไว้ใน heap)
+    // รอจนคำตอบของ request ก่อนหน้าใน connection เขียนเสร็จก่อน (turn) และนับ byte ไม่ให้เกิน limit ของงาน
+    static class OutputFrames implements WritableByteChannel {
+        private final OutputStream out;
+        private final CompletableFuture<Void> turn;
+        private final long limit;
+        private long sent;
+
+        OutputFrames(OutputStream out, CompletableFuture<Void> turn, long limit) {
+            this.out = out;
+            this.turn = turn;
+            this.limit = limit;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int length = source.remaining();
+            if (length == 0) {
+                return 0;
+            }
+            if (sent + length > limit) {
+                throw new OutputLimitExceeded("output exceeds " + limit + " bytes");
+            }
+            turn.join();
+            Message frame = new Message(OUTPUT);
+            frame.payload = new byte[length];
+            source.get(frame.payload);
+            send(out, frame);
+            sent += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // socket เป็นของ connection ไม่ใช่ของงาน
+        }
+    }
+
+    static class OutputLimitExceeded extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        OutputLimitExceeded(String message) {
+            super(message);
+        }
+    }
+
+    static void write(OutputStream out, Message message) {
+        try {
+            send(out, message);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void send(OutputStream out, Message message) throws IOException {
+        StringBuilder header = new StringBuilder(message.command).append(' ').append(message.payload.length);
+        for (Map.Entry<String, String> option : message.options.entrySet()) {
+            header.append(' ').append(option.getKey()).append('=').append(option.getValue());
+        }
+        if (message.message != null) {
+            header.append(" message=").append(message.message.replace('\n', ' '));
+        }
+        header.append('\n');
+        out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+        out.write(message.payload);
+        out.flush();
+    }
+
+    // stream ทับ socket channel โดยตรง: Channels.newInputStream/newOutputStream ล็อก channel ร่วมกัน
+    // ทำให้เขียนคำตอบไม่ได้ระหว่างที่อีก thread รออ่าน request ถัดไป
+    static InputStream input(ByteChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    static OutputStream output(ByteChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        };
+    }
+}
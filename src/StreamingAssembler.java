@@ -0,0 +1,607 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Assembler แบบอ่านรอบเดียว (single pass) สำหรับไฟล์ assembly ขนาดใหญ่ ให้ผลเหมือน Assembler ทุก word
+// อ่านไฟล์เป็น byte ทีละก้อนแล้วแยก token ตรงจาก buffer ไม่ใช้ regex ไม่สร้าง String/array ต่อบรรทัด
+// label ที่ถูกอ้างก่อนประกาศ (forward reference ใน lw/sw/beq/.fill) จะถูกจดไว้ใน backpatch list
+// แล้วเติมค่าให้ตอนเจอ label นั้น word ที่ไม่มีอะไรรอเติมแล้วจะถูกส่งออกทันที
+// memory ที่ใช้จึงขึ้นกับจำนวน label และระยะของ forward reference ไม่ใช่ขนาดไฟล์
+// รัน: java StreamingAssembler [input] [output] (ค่าเริ่มต้น src/assembly.txt และ src/machine_code.txt)
+public class StreamingAssembler {
+    // error ของ source พร้อมเลขบรรทัด (นับจาก 1)
+    public static class AssemblyError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int line;
+
+        AssemblyError(int line, String message) {
+            super(message);
+            this.line = line;
+        }
+
+        // เลขบรรทัดใน source ที่ผิด (getMessage() คือรายละเอียดโดยไม่มีเลขบรรทัด)
+        public int line() {
+            return line;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + getMessage();
+        }
+    }
+
+    // ปลายทางของ machine code ที่ assemble เสร็จแล้ว ได้รับ word เรียงตาม address
+    public interface WordSink {
+        void write(int[] words, int offset, int count) throws IOException;
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int FILL = 8; // ".fill" ใน opcodeOf
+    private static final byte[][] MNEMONICS = {
+            bytes("add"), bytes("nand"), bytes("lw"), bytes("sw"), bytes("beq"), bytes("jalr"), bytes("halt"),
+            bytes("noop"), bytes(".fill")
+    };
+    // ชนิดของช่องที่รอเติมด้วย address ของ label
+    private static final byte FIX_OFFSET = 0; // lw/sw: offset = address ของ label
+    private static final byte FIX_BRANCH = 1; // beq: offset = address ของ label - (address ของคำสั่ง + 1)
+    private static final byte FIX_FILL = 2; // .fill: ทั้ง word = address ของ label
+
+    private final WordSink sink;
+    private int lineNumber;
+
+    // token ของบรรทัดปัจจุบัน (เก็บแค่ 5 ตัวแรก: label, คำสั่ง, 3 operand แต่นับทุกตัว)
+    private final int[] tokenStart = new int[5];
+    private final int[] tokenEnd = new int[5];
+    private int tokenCount;
+
+    // word ที่ยังส่งออกไม่ได้ เพราะอาจยังมีช่องรอเติม: window[i] คือ address base + i
+    private int[] window = new int[4096];
+    private int base;
+    private int address;
+
+    // symbol table แบบ open addressing: ชื่อ label เก็บต่อกันใน pool
+    private int[] table = new int[1024]; // id + 1 (0 = ช่องว่าง)
+    private byte[] pool = new byte[1 << 14];
+    private int poolSize;
+    private int[] labelStart = new int[256];
+    private int[] labelLength = new int[256];
+    private int[] labelHash = new int[256];
+    private int[] labelAddress = new int[256]; // -1 = ยังไม่ได้ประกาศ
+    private int[] labelPending = new int[256]; // หัวของ backpatch list ของ label นี้ (-1 = ไม่มี)
+    private int labelCount;
+
+    // backpatch list: ring buffer ที่ index เพิ่มขึ้นเรื่อยๆ (ตำแหน่งจริงคือ index & (ขนาด - 1))
+    // ช่องรอเติมถูกเพิ่มตามลำดับ address จึงรู้ได้ว่า word ก่อน fixAddress[oldest] ส่งออกได้แล้ว
+    private int[] fixAddress = new int[256];
+    private int[] fixLine = new int[256];
+    private int[] fixNext = new int[256];
+    private byte[] fixKind = new byte[256];
+    private boolean[] fixDone = new boolean[256];
+    private int fixCount;
+    private int fixOldest;
+
+    public StreamingAssembler(WordSink sink) {
+        this.sink = sink;
+    }
+
+    public static void main(String[] args) {
+        String input = args.length > 0 ? args[0] : "src/assembly.txt";
+        String output = args.length > 1 ? args[1] : "src/machine_code.txt";
+        try (FileChannel in = FileChannel.open(Path.of(input), StandardOpenOption.READ);
+             TextSink out = new TextSink(FileChannel.open(Path.of(output), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            new StreamingAssembler(out).assemble(in);
+        } catch (AssemblyError e) {
+            System.err.println("Error: " + e.getMessage() + " (line " + e.line + ")");
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // API สำหรับเรียกจากโปรแกรมอื่นใน JVM เดียวกัน: คืน image (machine code + label) หรือโยน AssemblyError
+    // ไม่มี state ร่วมกันระหว่างการเรียก จึงเรียกพร้อมกันจากหลาย thread ได้
+    public static MachineImage assemble(CharSequence source) {
+        try {
+            return assemble(new ByteArrayInputStream(source.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // อ่านจาก array ไม่มีทางเกิด
+        }
+    }
+
+    public static MachineImage assemble(InputStream in) throws IOException {
+        return assembleImage(Channels.newChannel(in));
+    }
+
+    public static MachineImage assembleFile(String fileName) throws IOException {
+        try (FileChannel in = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            return assembleImage(in);
+        }
+    }
+
+    private static MachineImage assembleImage(ReadableByteChannel in) throws IOException {
+        ArraySink out = new ArraySink();
+        StreamingAssembler assembler = new StreamingAssembler(out);
+        assembler.assemble(in);
+        return new MachineImage(out.toArray(), 0, assembler.symbols());
+    }
+
+    // อ่าน source จาก in จนหมดแล้วส่ง machine code ทั้งหมดให้ sink คืนจำนวน word
+    public int assemble(ReadableByteChannel in) throws IOException {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int start = 0; // ต้นบรรทัดที่ยังไม่ได้ประมวลผล
+        while (true) {
+            int n = in.read(buffer);
+            int end = buffer.position();
+            if (n < 0) {
+                if (start < end) {
+                    line(bytes, start, end); // บรรทัดสุดท้ายที่ไม่มี \n
+                }
+                break;
+            }
+            for (int i = start; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    line(bytes, start, i);
+                    start = i + 1;
+                }
+            }
+            // ย้ายบรรทัดที่ยังไม่ครบไปไว้ต้น buffer (ขยาย buffer ถ้าบรรทัดเดียวยาวกว่า buffer)
+            int remaining = end - start;
+            if (remaining == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            } else {
+                System.arraycopy(bytes, start, bytes, 0, remaining);
+            }
+            buffer = ByteBuffer.wrap(bytes);
+            buffer.position(remaining);
+            start = 0;
+        }
+        return finish();
+    }
+
+    // label ที่ประกาศแล้วทั้งหมด (เรียกหลัง assemble)
+    public Map<String, Integer> symbols() {
+        Map<String, Integer> symbols = new HashMap<>();
+        for (int id = 0; id < labelCount; id++) {
+            if (labelAddress[id] >= 0) {
+                symbols.put(new String(pool, labelStart[id], labelLength[id], StandardCharsets.UTF_8),
+                        labelAddress[id]);
+            }
+        }
+        return symbols;
+    }
+
+    private int finish() throws IOException {
+        if (fixOldest < fixCount) {
+            int slot = fixOldest & (fixAddress.length - 1);
+            for (int id = 0; id < labelCount; id++) {
+                for (int index = labelPending[id]; index != -1; index = fixNext[index & (fixAddress.length - 1)]) {
+                    if (index == fixOldest) {
+                        throw new AssemblyError(fixLine[slot], (fixKind[slot] == FIX_FILL ? "Undefined label in .fill: "
+                                : "Undefined label: ") + labelName(id));
+                    }
+                }
+            }
+        }
+        flush(address);
+        return address;
+    }
+
+    // ประมวลผลหนึ่งบรรทัด bytes[start, end)
+    private void line(byte[] bytes, int start, int end) throws IOException {
+        lineNumber++;
+        tokenize(bytes, start, end);
+        if (tokenCount == 0) {
+            return;
+        }
+
+        int first = 0;
+        int opcode = opcodeOf(bytes, tokenStart[0], tokenEnd[0]);
+        if (opcode < 0) {
+            define(lookup(bytes, tokenStart[0], tokenEnd[0]));
+            if (tokenCount == 1) {
+                return; // บรรทัดที่มีแค่ label: label นี้ชี้ไปที่คำสั่งถัดไป
+            }
+            first = 1;
+            opcode = opcodeOf(bytes, tokenStart[1], tokenEnd[1]);
+            if (opcode < 0) {
+                throw new AssemblyError(lineNumber, "Invalid opcode: " + text(bytes, tokenStart[1], tokenEnd[1]));
+            }
+        }
+        int operands = tokenCount - first - 1;
+
+        if (opcode == FILL) {
+            // เหมือน Assembler: ถ้ามีสองค่าหลัง .fill จะใช้ค่าที่สอง
+            if (operands != 1 && operands != 2) {
+                throw new AssemblyError(lineNumber, "Invalid .fill syntax");
+            }
+            int t = first + operands;
+            emit(field(bytes, t, FIX_FILL));
+            return;
+        }
+
+        int word = opcode << 22;
+        switch (opcode) {
+            case 0: // add
+            case 1: // nand
+                need(operands, 3);
+                word |= (number(bytes, first + 1) << 19) | (number(bytes, first + 2) << 16) | number(bytes, first + 3);
+                break;
+            case 2: // lw
+            case 3: // sw
+            case 4: // beq
+                need(operands, 3);
+                word |= (number(bytes, first + 1) << 19) | (number(bytes, first + 2) << 16);
+                word |= field(bytes, first + 3, opcode == 4 ? FIX_BRANCH : FIX_OFFSET) & 0xFFFF;
+                break;
+            case 5: // jalr
+                need(operands, 2);
+                word |= (number(bytes, first + 1) << 19) | (number(bytes, first + 2) << 16);
+                break;
+            default: // halt, noop
+                break;
+        }
+        emit(word);
+    }
+
+    // แยก token ด้วยช่องว่าง ตัดทุกอย่างหลัง '#' (comment)
+    private void tokenize(byte[] bytes, int start, int end) {
+        tokenCount = 0;
+        int i = start;
+        while (i < end) {
+            byte b = bytes[i];
+            if (b == '#') {
+                return;
+            }
+            if (b >= 0 && b <= ' ') {
+                i++;
+                continue;
+            }
+            int tokenBegin = i;
+            while (i < end && bytes[i] != '#' && (bytes[i] < 0 || bytes[i] > ' ')) {
+                i++;
+            }
+            if (tokenCount < tokenStart.length) {
+                tokenStart[tokenCount] = tokenBegin;
+                tokenEnd[tokenCount] = i;
+            }
+            tokenCount++;
+        }
+    }
+
+    private void need(int operands, int count) {
+        if (operands < count) {
+            throw new AssemblyError(lineNumber, "Missing operand: expected " + count + ", found " + operands);
+        }
+    }
+
+    // 0-7 สำหรับคำสั่ง, FILL สำหรับ .fill, -1 ถ้าไม่ใช่ (คือ label)
+    private static int opcodeOf(byte[] bytes, int start, int end) {
+        for (int op = 0; op < MNEMONICS.length; op++) {
+            byte[] mnemonic = MNEMONICS[op];
+            if (mnemonic.length == end - start && Arrays.equals(mnemonic, 0, mnemonic.length, bytes, start, end)) {
+                return op;
+            }
+        }
+        return -1;
+    }
+
+    // operand ตัวเลขหรือ label: label ที่ยังไม่ได้ประกาศจะเพิ่มช่องรอเติมที่ address ปัจจุบันแล้วคืน 0
+    private int field(byte[] bytes, int t, byte kind) {
+        int start = tokenStart[t];
+        int end = tokenEnd[t];
+        int value;
+        if (isNumeric(bytes, start, end)) {
+            value = number(bytes, t);
+            if (kind != FIX_FILL) {
+                checkOffset(value, kind, lineNumber);
+            }
+            return value;
+        }
+        int id = lookup(bytes, start, end);
+        if (labelAddress[id] < 0) {
+            addFixup(id, kind);
+            return 0;
+        }
+        value = resolve(labelAddress[id], address, kind);
+        if (kind != FIX_FILL) {
+            checkOffset(value, kind, lineNumber);
+        }
+        return value;
+    }
+
+    private static int resolve(int labelAddress, int at, byte kind) {
+        return kind == FIX_BRANCH ? labelAddress - (at + 1) : labelAddress;
+    }
+
+    private static void checkOffset(int value, byte kind, int line) {
+        if (value < -32768 || value > 32767) {
+            throw new AssemblyError(line, (kind == FIX_BRANCH ? "Offset out of range (-32768 to 32767): "
+                    : "Offset field out of range (-32768 to 32767): ") + value);
+        }
+    }
+
+    // -?\d+ แบบเดียวกับ Assembler.isNumeric
+    private static boolean isNumeric(byte[] bytes, int start, int end) {
+        if (start < end && bytes[start] == '-') {
+            start++;
+        }
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // แปลง token ที่ t เป็น int แบบ Integer.parseInt (รับเครื่องหมาย +/- นำหน้า)
+    private int number(byte[] bytes, int t) {
+        int start = tokenStart[t];
+        int end = tokenEnd[t];
+        boolean negative = false;
+        int i = start;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            throw new AssemblyError(lineNumber, "Invalid number: " + text(bytes, start, end));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new AssemblyError(lineNumber, "Invalid number: " + text(bytes, start, end));
+            }
+            value = value * 10 + digit;
+            if (value > 1L + Integer.MAX_VALUE) {
+                throw new AssemblyError(lineNumber, "Invalid number: " + text(bytes, start, end));
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new AssemblyError(lineNumber, "Invalid number: " + text(bytes, start, end));
+        }
+        return (int) value;
+    }
+
+    private void emit(int word) throws IOException {
+        if (address - base == window.length) {
+            flush(fixOldest < fixCount ? fixAddress[fixOldest & (fixAddress.length - 1)] : address);
+            if (address - base == window.length) {
+                window = Arrays.copyOf(window, window.length * 2); // ยังมีช่องรอเติมตั้งแต่ต้น window
+            }
+        }
+        window[address - base] = word;
+        address++;
+    }
+
+    // ส่ง word ตั้งแต่ base ถึงก่อน limit ให้ sink
+    private void flush(int limit) throws IOException {
+        int count = limit - base;
+        if (count == 0) {
+            return;
+        }
+        sink.write(window, 0, count);
+        System.arraycopy(window, count, window, 0, address - limit);
+        base = limit;
+    }
+
+    // ประกาศ label ที่ address ปัจจุบัน แล้วเติมทุกช่องที่รอ label นี้อยู่
+    private void define(int id) {
+        if (labelAddress[id] >= 0) {
+            throw new AssemblyError(lineNumber, "Duplicate label found: " + labelName(id));
+        }
+        labelAddress[id] = address;
+        int mask = fixAddress.length - 1;
+        for (int index = labelPending[id]; index != -1; index = fixNext[index & mask]) {
+            int slot = index & mask;
+            int at = fixAddress[slot];
+            int value = resolve(address, at, fixKind[slot]);
+            if (fixKind[slot] == FIX_FILL) {
+                window[at - base] = value;
+            } else {
+                checkOffset(value, fixKind[slot], fixLine[slot]);
+                window[at - base] |= value & 0xFFFF;
+            }
+            fixDone[slot] = true;
+        }
+        labelPending[id] = -1;
+        while (fixOldest < fixCount && fixDone[fixOldest & mask]) {
+            fixOldest++;
+        }
+    }
+
+    private void addFixup(int id, byte kind) {
+        if (fixCount - fixOldest == fixAddress.length) {
+            growFixups();
+        }
+        int slot = fixCount & (fixAddress.length - 1);
+        fixAddress[slot] = address;
+        fixLine[slot] = lineNumber;
+        fixKind[slot] = kind;
+        fixDone[slot] = false;
+        fixNext[slot] = labelPending[id];
+        labelPending[id] = fixCount;
+        fixCount++;
+    }
+
+    // ขยาย ring buffer โดยคง index เดิมไว้ (list ของแต่ละ label อ้าง index จึงยังใช้ได้)
+    private void growFixups() {
+        int oldMask = fixAddress.length - 1;
+        int size = fixAddress.length * 2;
+        int[] address = new int[size];
+        int[] line = new int[size];
+        int[] next = new int[size];
+        byte[] kind = new byte[size];
+        boolean[] done = new boolean[size];
+        for (int index = fixOldest; index != fixCount; index++) {
+            int from = index & oldMask;
+            int to = index & (size - 1);
+            address[to] = fixAddress[from];
+            line[to] = fixLine[from];
+            next[to] = fixNext[from];
+            kind[to] = fixKind[from];
+            done[to] = fixDone[from];
+        }
+        fixAddress = address;
+        fixLine = line;
+        fixNext = next;
+        fixKind = kind;
+        fixDone = done;
+    }
+
+    // หา id ของ label จากชื่อ bytes[start, end) ถ้ายังไม่มีจะเพิ่มเป็น label ที่ยังไม่ได้ประกาศ
+    private int lookup(byte[] bytes, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int mask = table.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        int length = end - start;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (labelHash[id] == hash && labelLength[id] == length
+                    && Arrays.equals(pool, labelStart[id], labelStart[id] + length, bytes, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = labelCount++;
+        if (id == labelStart.length) {
+            int size = id * 2;
+            labelStart = Arrays.copyOf(labelStart, size);
+            labelLength = Arrays.copyOf(labelLength, size);
+            labelHash = Arrays.copyOf(labelHash, size);
+            labelAddress = Arrays.copyOf(labelAddress, size);
+            labelPending = Arrays.copyOf(labelPending, size);
+        }
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+        System.arraycopy(bytes, start, pool, poolSize, length);
+        labelStart[id] = poolSize;
+        labelLength[id] = length;
+        labelHash[id] = hash;
+        labelAddress[id] = -1;
+        labelPending[id] = -1;
+        poolSize += length;
+        table[slot] = id + 1;
+        if (labelCount * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < labelCount; id++) {
+            int slot = (labelHash[id] ^ (labelHash[id] >>> 16)) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    private String labelName(int id) {
+        return new String(pool, labelStart[id], labelLength[id], StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // เขียน word เป็นเลขฐานสิบบรรทัดละหนึ่งตัว (รูปแบบเดียวกับ machine_code.txt ของ Assembler)
+    public static class TextSink implements WordSink, AutoCloseable {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final byte[] newLine = bytes(System.lineSeparator());
+        private final byte[] digits = new byte[11];
+
+        public TextSink(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int[] words, int offset, int count) throws IOException {
+            for (int i = offset; i < offset + count; i++) {
+                if (buffer.remaining() < digits.length + newLine.length) {
+                    flush();
+                }
+                long v = words[i];
+                if (v < 0) {
+                    buffer.put((byte) '-');
+                    v = -v;
+                }
+                int n = 0;
+                do {
+                    digits[n++] = (byte) ('0' + v % 10);
+                    v /= 10;
+                } while (v != 0);
+                while (n > 0) {
+                    buffer.put(digits[--n]);
+                }
+                buffer.put(newLine);
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    // เก็บ word ทั้งหมดไว้ใน int[] ที่ขยายได้
+    public static class ArraySink implements WordSink {
+        private int[] words = new int[1024];
+        private int size;
+
+        @Override
+        public void write(int[] source, int offset, int count) {
+            if (size + count > words.length) {
+                words = Arrays.copyOf(words, Math.max(words.length * 2, size + count));
+            }
+            System.arraycopy(source, offset, words, size, count);
+            size += count;
+        }
+
+        public int[] toArray() {
+            return Arrays.copyOf(words, size);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// อ่าน trace แบบ binary ที่เขียนโดย TraceWriter (--trace=binary) แล้วแปลงกลับเป็นข้อความ
+// รัน: java TraceReader <trace file> [delta|full|final|none]
+// ระดับ full จะได้ผลลัพธ์เหมือน BehavioralSimulator แบบเดิมทุกตัวอักษร จึงใช้ diff กับ output ที่ใช้ตรวจงานได้
+public class TraceReader {
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: java TraceReader <trace file> [delta|full|final|none]");
+            System.exit(1);
+        }
+        int level = TraceWriter.parseLevel(args.length > 1 ? args[1] : "delta");
+        if (level == TraceWriter.BINARY) {
+            System.err.println("error: output level must be a text level");
+            System.exit(1);
+        }
+
+        try (FileChannel channel = FileChannel.open(Path.of(args[0]), StandardOpenOption.READ);
+             TraceWriter out = TraceWriter.open(level, null)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            replay(in, out);
+        } catch (IOException e) {
+            System.err.println("error: can't read trace " + args[0] + ": " + e.getMessage());
+            System.exit(1);
+        } catch (PagedMemory.MemoryFault e) { // การรันที่บันทึกไว้จบด้วย fault (state ก่อนคำสั่งนั้นพิมพ์ไปแล้ว)
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // สร้าง state ขึ้นใหม่จาก header แล้วเล่นทีละ record ส่งให้ TraceWriter พิมพ์
+    // trace ที่จบด้วย RECORD_FAULT โยน MemoryFault เดิมหลังพิมพ์ครบแล้ว ส่วน trace ที่ขาดท้ายได้ IOException พร้อม offset ของ record
+    public static void replay(ByteBuffer in, TraceWriter out) throws IOException {
+        int offset = in.position(); // ต้น record ที่กำลังอ่าน
+        try {
+            if (in.getInt() != TraceWriter.MAGIC) {
+                throw new IOException("not a trace file (bad magic)");
+            }
+            short version = in.getShort();
+            if (version < 1 || version > TraceWriter.VERSION) {
+                throw new IOException("unsupported trace version " + version);
+            }
+
+            BehavioralSimulator.stateStruct state = new BehavioralSimulator.stateStruct();
+            state.numMemory = in.getInt();
+            state.pc = in.getInt();
+            for (int i = 0; i < state.reg.length; i++) {
+                state.reg[i] = in.getInt();
+            }
+            for (int i = 0; i < state.numMemory; i++) {
+                state.mem.set(i, in.getInt());
+            }
+            out.load(state);
+
+            long step = 0;
+            while (true) {
+                offset = in.position();
+                byte kind = in.get();
+                if (kind == TraceWriter.RECORD_END) {
+                    long total = in.getLong();
+                    state.pc = in.getInt();
+                    boolean limitReached = in.get() != 0;
+                    out.finish(state, total, limitReached);
+                    return;
+                }
+                if (kind == TraceWriter.RECORD_FAULT) {
+                    long total = in.getLong();
+                    state.pc = in.getInt();
+                    PagedMemory.MemoryFault fault = new PagedMemory.MemoryFault(in.getInt(), in.getInt());
+                    out.beforeStep(state); // คำสั่งที่ fault ถูกพิมพ์ state ก่อนทำเหมือนคำสั่งอื่น
+                    out.fault(total, state.pc, fault);
+                    throw fault;
+                }
+
+                state.pc = in.getInt();
+                out.beforeStep(state);
+                int where = 0;
+                int value = 0;
+                if (kind == TraceWriter.RECORD_REG) {
+                    where = in.get();
+                    value = in.getInt();
+                    if (where < 0 || where >= state.reg.length) {
+                        throw new IOException("corrupt trace: register " + where + " at offset " + offset);
+                    }
+                    state.reg[where] = value;
+                } else if (kind == TraceWriter.RECORD_MEM) {
+                    where = in.getInt();
+                    value = in.getInt();
+                    state.mem.set(where, value);
+                } else if (kind != TraceWriter.RECORD_NONE) {
+                    throw new IOException("corrupt trace record " + kind + " at step " + (step + 1));
+                }
+                out.afterStep(++step, state.pc, kind, where, value);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated trace: record at offset " + offset + " ends past the end of the file");
+        }
+    }
+}
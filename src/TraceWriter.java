@@ -0,0 +1,297 @@
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// เขียน trace ของการรันโปรแกรม ผ่าน buffer ขนาดใหญ่ก้อนเดียวลง channel (stdout หรือไฟล์) แทนการ println ทีละบรรทัด
+// ระดับของ trace:
+//   NONE   - พิมพ์แค่ "machine halted" กับจำนวนคำสั่ง
+//   FINAL  - พิมพ์ state สุดท้ายอย่างเดียว
+//   DELTA  - พิมพ์ state เริ่มต้นครั้งเดียว แล้วพิมพ์เฉพาะ register/memory ที่เปลี่ยนในแต่ละคำสั่ง
+//   FULL   - รูปแบบเดิมทุกตัวอักษร (พิมพ์ state เต็มก่อนทุกคำสั่ง) ใช้สำหรับตรวจงาน
+//   BINARY - trace แบบ binary ขนาดเล็ก อ่านกลับด้วย TraceReader
+public class TraceWriter implements Closeable {
+    public static final int NONE = 0;
+    public static final int FINAL = 1;
+    public static final int DELTA = 2;
+    public static final int FULL = 3;
+    public static final int BINARY = 4;
+
+    // รูปแบบ binary: header = MAGIC, VERSION, numMemory, pc, reg[0..7], mem[0..numMemory)
+    // ตามด้วย record ละหนึ่งคำสั่ง (pc ก่อนทำคำสั่ง + สิ่งที่เปลี่ยน) และปิดท้ายด้วย RECORD_END หรือ RECORD_FAULT
+    static final int MAGIC = 0x4C435452; // "LCTR"
+    static final short VERSION = 2; // 2: เพิ่ม RECORD_FAULT (TraceReader ยังอ่าน 1 ได้)
+    static final byte RECORD_NONE = 0; // ไม่มีอะไรเปลี่ยน: pc
+    static final byte RECORD_REG = 1; // register เปลี่ยน: pc, reg (byte), value
+    static final byte RECORD_MEM = 2; // memory เปลี่ยน: pc, address, value
+    static final byte RECORD_END = 0x7F; // จบ: total (long), final pc, limitReached (byte)
+    static final byte RECORD_FAULT = 0x7E; // จบด้วย MemoryFault: total (long), pc ที่ fault, address, ขนาด memory
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final int level;
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final byte[] digits = new byte[11];
+    private boolean hasDeadline;
+    private long deadline; // เวลา System.nanoTime() ที่ execute ต้องหยุด (timeout ของ SimulatorDaemon)
+
+    public TraceWriter(int level, WritableByteChannel channel) {
+        this.level = level;
+        this.channel = channel;
+    }
+
+    // เปิด trace ไปที่ไฟล์ fileName หรือ stdout ถ้า fileName เป็น null
+    public static TraceWriter open(int level, String fileName) throws IOException {
+        WritableByteChannel channel = fileName == null
+                ? new FileOutputStream(FileDescriptor.out).getChannel()
+                : FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new TraceWriter(level, channel);
+    }
+
+    // ให้ execute หยุดก่อนครบ maxSteps เมื่อเลยเวลา System.nanoTime() นี้ (ดูว่าหยุดเพราะอะไรได้จาก state.halted)
+    public void setDeadline(long nanoTime) {
+        hasDeadline = true;
+        deadline = nanoTime;
+    }
+
+    // แปลงชื่อระดับจาก command line เช่น "delta" เป็นค่าคงที่
+    public static int parseLevel(String name) {
+        switch (name) {
+            case "none":
+                return NONE;
+            case "final":
+                return FINAL;
+            case "delta":
+                return DELTA;
+            case "full":
+                return FULL;
+            case "binary":
+                return BINARY;
+            default:
+                throw new IllegalArgumentException("unknown trace level: " + name);
+        }
+    }
+
+    // ต้องรู้ state ทุกคำสั่งหรือไม่ (ถ้าไม่ต้อง ใช้ execute แบบเร็วหรือ BlockCompiler ได้)
+    public boolean needsSteps() {
+        return level == DELTA || level == FULL || level == BINARY;
+    }
+
+    // บรรทัด memory[i]= ตอนโหลดโปรแกรม (แบบเดิม) และ state เริ่มต้นของ DELTA/BINARY
+    public void load(BehavioralSimulator.stateStruct state) throws IOException {
+        if (level == FULL || level == DELTA) {
+            for (int i = 0; i < state.numMemory; i++) {
+                text("memory[").number(i).text("]=").number(state.mem.get(i)).newLine();
+            }
+        }
+        if (level == DELTA) {
+            printState(state);
+        } else if (level == BINARY) {
+            ensure(4 + 2 + 4 + 4 + 4 * state.reg.length);
+            buffer.putInt(MAGIC).putShort(VERSION).putInt(state.numMemory).putInt(state.pc);
+            for (int value : state.reg) {
+                buffer.putInt(value);
+            }
+            for (int i = 0; i < state.numMemory; i++) {
+                ensure(4);
+                buffer.putInt(state.mem.get(i));
+            }
+        }
+    }
+
+    // รันแบบเดียวกับ BehavioralSimulator.execute แต่บันทึก trace ทุกคำสั่ง
+    public long execute(BehavioralSimulator.stateStruct state, BehavioralSimulator.decodedStruct decoded, long maxSteps)
+            throws IOException {
+        int[] before = new int[state.reg.length];
+        long total = 0;
+        boolean running = true;
+
+        while (running && total <= maxSteps) {
+            total++;
+            int pc = state.pc;
+            beforeStep(state);
+
+            // เก็บค่าเดิมไว้เทียบ: แต่ละคำสั่งเปลี่ยน register ได้อย่างมากหนึ่งตัว หรือ memory หนึ่ง word (sw)
+            System.arraycopy(state.reg, 0, before, 0, before.length);
+            int storeAddress = -1;
+            int oldValue = 0;
+            if (pc >= 0 && pc < decoded.size) {
+                int base = pc * BehavioralSimulator.decodedStruct.STRIDE;
+                if (decoded.code[base + BehavioralSimulator.decodedStruct.OPCODE] == 3) {
+                    storeAddress = decoded.code[base + BehavioralSimulator.decodedStruct.OPERAND]
+                            + state.reg[decoded.code[base + BehavioralSimulator.decodedStruct.REGA]];
+                    if (storeAddress >= 0 && storeAddress < state.mem.size()) {
+                        oldValue = state.mem.get(storeAddress);
+                    }
+                }
+            }
+
+            try {
+                running = BehavioralSimulator.step(state, decoded);
+            } catch (PagedMemory.MemoryFault e) {
+                fault(total, pc, e);
+                throw e;
+            }
+
+            byte kind = RECORD_NONE;
+            int where = 0;
+            int value = 0;
+            if (storeAddress >= 0 && state.mem.get(storeAddress) != oldValue) {
+                kind = RECORD_MEM;
+                where = storeAddress;
+                value = state.mem.get(storeAddress);
+            } else {
+                for (int r = 0; r < before.length; r++) {
+                    if (state.reg[r] != before[r]) {
+                        kind = RECORD_REG;
+                        where = r;
+                        value = state.reg[r];
+                        break;
+                    }
+                }
+            }
+            afterStep(total, pc, kind, where, value);
+            if (hasDeadline && (total & 0xFFF) == 0 && System.nanoTime() - deadline > 0) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    // เรียกก่อนทำแต่ละคำสั่ง: FULL พิมพ์ state เต็มแบบเดิม
+    public void beforeStep(BehavioralSimulator.stateStruct state) throws IOException {
+        if (level == FULL) {
+            printState(state);
+        }
+    }
+
+    // เรียกหลังทำคำสั่งที่ step (นับจาก 1) ซึ่งอยู่ที่ pc: kind บอกว่าเปลี่ยน register หรือ memory ที่ where เป็น value
+    public void afterStep(long step, int pc, byte kind, int where, int value) throws IOException {
+        if (level == DELTA) {
+            text("step ").number(step).text(" pc ").number(pc);
+            if (kind == RECORD_REG) {
+                text(" reg[ ").number(where).text(" ] ").number(value);
+            } else if (kind == RECORD_MEM) {
+                text(" mem[ ").number(where).text(" ] ").number(value);
+            }
+            newLine();
+        } else if (level == BINARY) {
+            ensure(1 + 4 + 4 + 4);
+            buffer.put(kind).putInt(pc);
+            if (kind == RECORD_REG) {
+                buffer.put((byte) where).putInt(value);
+            } else if (kind == RECORD_MEM) {
+                buffer.putInt(where).putInt(value);
+            }
+        }
+    }
+
+    // ข้อความตอนจบและ state สุดท้าย (รูปแบบเดิม)
+    public void finish(BehavioralSimulator.stateStruct state, long total, boolean limitReached) throws IOException {
+        if (level == BINARY) {
+            ensure(1 + 8 + 4 + 1);
+            buffer.put(RECORD_END).putLong(total).putInt(state.pc).put((byte) (limitReached ? 1 : 0));
+            return;
+        }
+        if (limitReached) {
+            text("Max instruction limit reached").newLine();
+        }
+        text("machine halted\ntotal of ").number(total).text(" instructions executed");
+        if (level != NONE) {
+            text("\nfinal state of machine:").newLine();
+            printState(state);
+        } else {
+            newLine();
+        }
+    }
+
+    // คำสั่งที่ step (นับจาก 1) ซึ่งอยู่ที่ pc เกิด MemoryFault: BINARY บันทึกเป็น record ปิดท้าย
+    // ส่วนแบบข้อความไม่พิมพ์เพิ่ม (simulator รายงาน error ทาง stderr เอง)
+    public void fault(long step, int pc, PagedMemory.MemoryFault e) throws IOException {
+        if (level == BINARY) {
+            ensure(1 + 8 + 4 + 4 + 4);
+            buffer.put(RECORD_FAULT).putLong(step).putInt(pc).putInt(e.address).putInt(e.size);
+        }
+    }
+
+    // พิมพ์ state เต็มในรูปแบบเดิมของ simulator (ห้ามเปลี่ยน เพราะใช้ตรวจงาน)
+    public void printState(BehavioralSimulator.stateStruct state) throws IOException {
+        text("\n@@@\nstate:").newLine();
+        text("\tpc ").number(state.pc).newLine();
+        text("\tmemory:").newLine();
+        for (int i = 0; i < state.numMemory; i++) {
+            text("\t\tmem[ ").number(i).text(" ] ").number(state.mem.get(i)).newLine();
+        }
+        text("\tregisters:").newLine();
+        for (int i = 0; i < state.reg.length; i++) {
+            text("\t\treg[ ").number(i).text(" ] ").number(state.reg[i]).newLine();
+        }
+        text("end state").newLine();
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    // ข้อความทั้งหมดใน trace เป็น ASCII จึงเขียนเป็น byte ตรงๆ ได้
+    private TraceWriter text(String s) throws IOException {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buffer.put((byte) s.charAt(i));
+        }
+        return this;
+    }
+
+    // เขียนตัวเลขฐานสิบโดยไม่สร้าง String
+    private TraceWriter number(long value) throws IOException {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return text(Long.toString(value));
+        }
+        int v = (int) value;
+        if (v == Integer.MIN_VALUE) {
+            return text("-2147483648");
+        }
+        ensure(digits.length);
+        if (v < 0) {
+            buffer.put((byte) '-');
+            v = -v;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        while (n > 0) {
+            buffer.put(digits[--n]);
+        }
+        return this;
+    }
+
+    // ขึ้นบรรทัดใหม่แบบเดียวกับ System.out.println
+    private TraceWriter newLine() throws IOException {
+        return text(System.lineSeparator());
+    }
+}